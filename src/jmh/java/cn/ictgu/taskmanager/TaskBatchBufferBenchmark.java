@@ -0,0 +1,105 @@
+package cn.ictgu.taskmanager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批处理取任务的内存分配对比，使用 -prof gc 查看每批分配的字节数（gc.alloc.rate.norm）
+ * 1、executeArray：实现IScheduleTaskDealMulti，每批按任务类型创建一个数组传给execute(T[])
+ * 2、executeList：实现IScheduleTaskDealMultiList，批次数组处理成功后回收，数量相同的下一批重用，传给execute(List)的是可重用的视图
+ * 运行：mvn -Pjmh test-compile exec:exec -Djmh.args="TaskBatchBufferBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskBatchBufferBenchmark {
+
+  // 每批的任务数，对应executeNumber
+  @Param({"10", "100"})
+  private int executeNumber;
+
+  private Task[] source;
+
+  private TaskBatchBuffer batchBuffer;
+
+  @Setup
+  public void setUp() {
+    this.source = new Task[this.executeNumber];
+    for (int i = 0; i < this.executeNumber; i++) {
+      this.source[i] = new Task(i);
+    }
+    this.batchBuffer = new TaskBatchBuffer();
+  }
+
+  @Benchmark
+  public long executeArray() {
+    Task[] tasks = (Task[]) this.batchBuffer.copyOf(this.drainToScratch(), Task.class);
+    return execute(tasks);
+  }
+
+  @Benchmark
+  public long executeList() {
+    Object[] batch = this.batchBuffer.copyOf(this.drainToScratch(), null);
+    long result;
+    try {
+      result = execute(this.asTaskList(batch));
+    } finally {
+      this.batchBuffer.clearList();
+    }
+    this.batchBuffer.recycle(batch);
+    return result;
+  }
+
+  /**
+   * 与getScheduleTaskIdMulti相同，先把任务取到可重用的临时数组中
+   */
+  private int drainToScratch() {
+    Object[] scratch = this.batchBuffer.getScratch(this.executeNumber);
+    System.arraycopy(this.source, 0, scratch, 0, this.executeNumber);
+    return this.executeNumber;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Task> asTaskList(Object[] batch) {
+    return (List<Task>) (List<?>) this.batchBuffer.asList(batch);
+  }
+
+  private static long execute(Task[] tasks) {
+    long result = 0;
+    for (Task task : tasks) {
+      result = result + task.id;
+    }
+    return result;
+  }
+
+  private static long execute(List<Task> tasks) {
+    long result = 0;
+    for (int i = 0; i < tasks.size(); i++) {
+      result = result + tasks.get(i).id;
+    }
+    return result;
+  }
+
+  private static class Task {
+    private final long id;
+
+    Task(long id) {
+      this.id = id;
+    }
+  }
+}
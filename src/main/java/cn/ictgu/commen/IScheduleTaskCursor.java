@@ -0,0 +1,13 @@
+package cn.ictgu.commen;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 任务游标，调度器按需从游标中读取任务，读取完毕、任务项变化或停止调度时关闭
+ *
+ * T 任务类型
+ */
+public interface IScheduleTaskCursor<T> extends Iterator<T>, Closeable {
+
+}
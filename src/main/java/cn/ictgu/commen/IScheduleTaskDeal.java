@@ -16,8 +16,8 @@ public interface IScheduleTaskDeal<T> {
    *
    * @param taskParameter    任务的自定义参数
    * @param ownSign          当前环境名称
-   * @param taskItemNum      当前任务类型的任务队列数量
-   * @param taskItemList     当前调度服务器，分配到的可处理队列
+   * @param taskItemNum      当前任务类型的任务队列数量，区间任务项按区间的长度计算
+   * @param taskItemList     当前调度服务器，分配到的可处理队列，区间任务项带有区间的开始和结束
    * @param eachFetchDataNum 每次获取数据的数量
    */
   List<T> selectTasks(
@@ -33,4 +33,20 @@ public interface IScheduleTaskDeal<T> {
    */
   Comparator<T> getComparator();
 
+  /**
+   * 获取任务的唯一标识,NotSleep模式下用于判断任务是否正在处理
+   * 返回null时使用getComparator逐个比较
+   */
+  default Object getTaskKey(T task) {
+    return null;
+  }
+
+  /**
+   * 获取任务的分区键,任务类型开启按分区顺序处理时使用
+   * 分区键相同的任务由同一个线程按顺序处理，返回null时不保证顺序
+   */
+  default Object getPartitionKey(T task) {
+    return null;
+  }
+
 }
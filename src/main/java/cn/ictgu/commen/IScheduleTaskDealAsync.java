@@ -0,0 +1,18 @@
+package cn.ictgu.commen;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步任务处理接口，处理线程提交任务后不等待结果，适合大部分时间在等待回调的任务
+ */
+public interface IScheduleTaskDealAsync<T> extends IScheduleTaskDeal<T> {
+
+  /**
+   * 异步执行单个任务
+   * @param task Object
+   * @param ownSign 当前环境名称
+   * @return 任务完成时结果为true表示处理成功，false或异常完成表示处理失败
+   */
+  CompletableFuture<Boolean> execute(T task, String ownSign) throws Exception;
+
+}
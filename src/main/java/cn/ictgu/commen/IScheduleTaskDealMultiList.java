@@ -0,0 +1,20 @@
+package cn.ictgu.commen;
+
+import java.util.List;
+
+/**
+ * 可批处理的任务接口，以列表代替数组传递任务
+ * 1、不需要按任务的类型创建数组，批处理的数组和列表由处理线程重用，减少内存分配
+ * 2、传入的列表只在execute执行期间有效，不能保存或者在其它线程中使用
+ */
+public interface IScheduleTaskDealMultiList<T> extends IScheduleTaskDeal<T> {
+
+  /**
+   * 执行给定的任务列表
+   *
+   * @param tasks   任务列表，只读
+   * @param ownSign 当前环境名称
+   */
+  boolean execute(List<T> tasks, String ownSign) throws Exception;
+
+}
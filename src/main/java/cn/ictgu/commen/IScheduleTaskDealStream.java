@@ -0,0 +1,49 @@
+package cn.ictgu.commen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以游标方式查询任务的接口，与IScheduleTaskDealSingle或IScheduleTaskDealMulti一起实现
+ * 调度器每次从游标中读取不超过eachFetchDataNum条数据，读取到的数据处理完后再继续读取，内存中的数据量有上限
+ *
+ * T 任务类型
+ */
+public interface IScheduleTaskDealStream<T> extends IScheduleTaskDeal<T> {
+
+  /**
+   * 根据条件，打开当前调度服务器可处理的任务游标
+   *
+   * @param taskParameter    任务的自定义参数
+   * @param ownSign          当前环境名称
+   * @param taskItemNum      当前任务类型的任务队列数量
+   * @param taskItemList     当前调度服务器，分配到的可处理队列
+   */
+  IScheduleTaskCursor<T> openTasks(
+    String taskParameter,
+    String ownSign,
+    int taskItemNum,
+    List<TaskItemDefine> taskItemList
+  ) throws Exception;
+
+  /**
+   * 从游标中读取一批数据，调度器不会调用该方法
+   */
+  @Override
+  default List<T> selectTasks(
+    String taskParameter,
+    String ownSign,
+    int taskItemNum,
+    List<TaskItemDefine> taskItemList,
+    int eachFetchDataNum
+  ) throws Exception {
+    List<T> result = new ArrayList<>();
+    try (IScheduleTaskCursor<T> cursor = openTasks(taskParameter, ownSign, taskItemNum, taskItemList)) {
+      while (result.size() < eachFetchDataNum && cursor.hasNext()) {
+        result.add(cursor.next());
+      }
+    }
+    return result;
+  }
+
+}
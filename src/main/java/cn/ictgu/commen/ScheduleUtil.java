@@ -4,7 +4,11 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * 调度处理工具类
@@ -13,6 +17,8 @@ import java.util.Date;
 public class ScheduleUtil {
   private static String OWN_SIGN_BASE = "BASE";
 
+  private static final Pattern TASK_ITEM_RANGE = Pattern.compile("^\\s*(\\d{1,18})\\s*-\\s*(\\d{1,18})\\s*$");
+
   public static String getLocalHostName() {
     try {
       return InetAddress.getLocalHost().getHostName();
@@ -99,4 +105,105 @@ public class ScheduleUtil {
     return taskNums;
   }
 
+  /**
+   * 按每台服务器的容量轮流分配任务数量，容量不足时分配的总数小于任务数量
+   *
+   * @param maxNums           每台服务器最多可以分配的数量
+   * @param taskNum           任务数量
+   */
+  public static int[] assignTaskNumber(int[] maxNums, int taskNum) {
+    int[] taskNums = new int[maxNums.length];
+    int remainNum = taskNum;
+    boolean isAssigned = true;
+    while (remainNum > 0 && isAssigned) {
+      isAssigned = false;
+      for (int i = 0; i < taskNums.length && remainNum > 0; i++) {
+        if (taskNums[i] < maxNums[i]) {
+          taskNums[i] = taskNums[i] + 1;
+          remainNum = remainNum - 1;
+          isAssigned = true;
+        }
+      }
+    }
+    return taskNums;
+  }
+
+  /**
+   * 解析区间任务项，例如 0-65535，包含开始和结束
+   *
+   * @param taskItem          任务项
+   * @return 区间的开始和结束，不是区间任务项时返回null
+   */
+  public static long[] parseTaskItemRange(String taskItem) {
+    if (taskItem == null) {
+      return null;
+    }
+    Matcher matcher = TASK_ITEM_RANGE.matcher(taskItem);
+    if (!matcher.matches()) {
+      return null;
+    }
+    long start = Long.parseLong(matcher.group(1));
+    long end = Long.parseLong(matcher.group(2));
+    if (start > end) {
+      return null;
+    }
+    return new long[]{start, end};
+  }
+
+  /**
+   * 任务项包含的分片数量，区间任务项为区间的长度，其它任务项为1
+   */
+  public static long getTaskItemSize(String taskItem) {
+    long[] range = parseTaskItemRange(taskItem);
+    return range == null ? 1 : range[1] - range[0] + 1;
+  }
+
+  /**
+   * 合并相邻的区间任务项，用于一次查询所有分配到的区间，不是区间的任务项被忽略
+   *
+   * @param taskItems         分配到的任务项
+   * @return 合并后的区间，按开始排序
+   */
+  public static List<long[]> mergeTaskItemRange(List<TaskItemDefine> taskItems) {
+    List<long[]> ranges = new ArrayList<>();
+    for (TaskItemDefine item : taskItems) {
+      if (item.isRange()) {
+        ranges.add(new long[]{item.getRangeStart(), item.getRangeEnd()});
+      }
+    }
+    ranges.sort((r1, r2) -> Long.compare(r1[0], r2[0]));
+    List<long[]> result = new ArrayList<>(ranges.size());
+    for (long[] range : ranges) {
+      long[] last = result.isEmpty() ? null : result.get(result.size() - 1);
+      if (last != null && range[0] <= last[1] + 1) {
+        last[1] = Math.max(last[1], range[1]);
+      } else {
+        result.add(range);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 把区间平均拆分成连续的子区间，子区间数量不超过splitNum和区间的长度
+   *
+   * @param start             区间开始
+   * @param end               区间结束
+   * @param splitNum          拆分的数量
+   */
+  public static List<long[]> splitTaskItemRange(long start, long end, int splitNum) {
+    long length = end - start + 1;
+    int num = (int) Math.max(Math.min(splitNum, length), 1);
+    long numOfSingle = length / num;
+    long otherNum = length % num;
+    List<long[]> result = new ArrayList<>(num);
+    long current = start;
+    for (int i = 0; i < num; i++) {
+      long size = i < otherNum ? numOfSingle + 1 : numOfSingle;
+      result.add(new long[]{current, current + size - 1});
+      current = current + size;
+    }
+    return result;
+  }
+
 }
@@ -15,11 +15,30 @@ public class TaskItemDefine {
   //任务项自定义参数
   private String parameter;
 
+  //区间任务项的开始和结束，都包含在区间内，不是区间任务项时为-1
+  //每个子区间一个任务项，可以直接作为查询条件，例如 bucket between rangeStart and rangeEnd
+  //需要合并相邻的子区间时使用 ScheduleUtil.mergeTaskItemRange
+  private long rangeStart = -1;
+
+  private long rangeEnd = -1;
+
+  public boolean isRange() {
+    return this.rangeStart >= 0;
+  }
+
+  /**
+   * 分片是否在区间内，用于按 hash(key) % taskItemNum 分片的数据
+   */
+  public boolean containsRange(long value) {
+    return this.isRange() && value >= this.rangeStart && value <= this.rangeEnd;
+  }
+
   @Override
   public String toString() {
     return "TaskItemDefine{" +
            "taskItemId='" + taskItemId + '\'' +
            ", parameter='" + parameter + '\'' +
+           (isRange() ? ", range=[" + rangeStart + ", " + rangeEnd + "]" : "") +
            '}';
   }
 }
@@ -16,4 +16,10 @@ public class ZookeeperProperties{
   private String rootPath;
   private String username;
   private String password;
+  // SHARED模式共享线程池的线程数，不设置时为CPU核数的2倍
+  private Integer sharedThreadNumber;
+  // 单JVM最多运行的调度器数量，不设置表示不限制
+  private Integer maxManagerNumber;
+  // 单JVM所有调度器的处理线程总数上限，不设置表示不限制
+  private Integer maxThreadNumber;
 }
@@ -40,6 +40,8 @@ public class TaskApi {
     scheduleTaskType.setTaskParameter(request.getParameter("taskParameter"));
     scheduleTaskType.setTaskItems(ScheduleTaskType.splitTaskItem(request.getParameter("taskItems")));
     try {
+      ScheduleTaskType oldTaskType = factory.getScheduleDataManager().loadTaskTypeBaseInfo(baseTaskType);
+      setTuningParameter(scheduleTaskType, oldTaskType == null ? scheduleTaskType : oldTaskType, request);
       factory.getScheduleDataManager().updateBaseTaskType(scheduleTaskType);
     }catch (Throwable e){
       message = "ERROR: " + e.getMessage();
@@ -68,6 +70,7 @@ public class TaskApi {
     scheduleTaskType.setPermitRunEndTime(request.getParameter("permitRunEndTime"));
     scheduleTaskType.setTaskParameter(request.getParameter("taskParameter"));
     scheduleTaskType.setTaskItems(ScheduleTaskType.splitTaskItem(request.getParameter("taskItems")));
+    setTuningParameter(scheduleTaskType, scheduleTaskType, request);
     System.err.println(scheduleTaskType.toString());
     try {
       factory.getScheduleDataManager().createBaseTaskType(scheduleTaskType);
@@ -125,5 +128,67 @@ public class TaskApi {
     return message;
   }
 
-}
+  @RequestMapping("/latency")
+  public String latency(HttpServletRequest request){
+    String baseTaskType = request.getParameter("baseTaskType");
+    String message;
+    try {
+      message = factory.getLatencyDescription(baseTaskType);
+    }catch (Throwable e){
+      message = "ERROR: " + e.getMessage();
+    }
+    return message;
+  }
+
+  @RequestMapping("/wakeUp")
+  public String wakeUp(HttpServletRequest request){
+    String baseTaskType = request.getParameter("baseTaskType");
+    String message = "success";
+    try {
+      factory.wakeUp(baseTaskType);
+    }catch (Throwable e){
+      message = "ERROR: " + e.getMessage();
+    }
+    return message;
+  }
 
+  /**
+   * 设置调优参数，请求中没有的参数沿用defaultTaskType中的值，避免在页面修改任务时被重置
+   */
+  private void setTuningParameter(ScheduleTaskType scheduleTaskType, ScheduleTaskType defaultTaskType, HttpServletRequest request) {
+    scheduleTaskType.setMaxHoldDataNumber(getIntParameter(request, "maxHoldDataNumber", defaultTaskType.getMaxHoldDataNumber()));
+    scheduleTaskType.setSharedWeight(getIntParameter(request, "sharedWeight", defaultTaskType.getSharedWeight()));
+    scheduleTaskType.setExecuteTimeout(getLongParameter(request, "executeTimeout", defaultTaskType.getExecuteTimeout()));
+    scheduleTaskType.setMaxRetryTimes(getIntParameter(request, "maxRetryTimes", defaultTaskType.getMaxRetryTimes()));
+    scheduleTaskType.setRetryDelay(getLongParameter(request, "retryDelay", defaultTaskType.getRetryDelay()));
+    scheduleTaskType.setRetryQueueSize(getIntParameter(request, "retryQueueSize", defaultTaskType.getRetryQueueSize()));
+    scheduleTaskType.setPartitionOrdered(getBooleanParameter(request, "partitionOrdered", defaultTaskType.isPartitionOrdered()));
+    scheduleTaskType.setMinExecuteNumber(getIntParameter(request, "minExecuteNumber", defaultTaskType.getMinExecuteNumber()));
+    scheduleTaskType.setExecuteLingerTime(getIntParameter(request, "executeLingerTime", defaultTaskType.getExecuteLingerTime()));
+    scheduleTaskType.setMinSleepTimeNoData(getIntParameter(request, "minSleepTimeNoData", defaultTaskType.getMinSleepTimeNoData()));
+    scheduleTaskType.setMinThreads(getIntParameter(request, "minThreads", defaultTaskType.getMinThreads()));
+    scheduleTaskType.setMaxThreads(getIntParameter(request, "maxThreads", defaultTaskType.getMaxThreads()));
+    scheduleTaskType.setThreadKeepAliveTime(getLongParameter(request, "threadKeepAliveTime", defaultTaskType.getThreadKeepAliveTime()));
+    scheduleTaskType.setMinFetchDataNumber(getIntParameter(request, "minFetchDataNumber", defaultTaskType.getMinFetchDataNumber()));
+    scheduleTaskType.setMaxFetchDataNumber(getIntParameter(request, "maxFetchDataNumber", defaultTaskType.getMaxFetchDataNumber()));
+    scheduleTaskType.setPrefetchLowWaterMark(getIntParameter(request, "prefetchLowWaterMark", defaultTaskType.getPrefetchLowWaterMark()));
+    scheduleTaskType.setMaxConcurrency(getIntParameter(request, "maxConcurrency", defaultTaskType.getMaxConcurrency()));
+    scheduleTaskType.setMaxInFlight(getIntParameter(request, "maxInFlight", defaultTaskType.getMaxInFlight()));
+    scheduleTaskType.setFetchGroupSize(getIntParameter(request, "fetchGroupSize", defaultTaskType.getFetchGroupSize()));
+    scheduleTaskType.setFetchThreadNumber(getIntParameter(request, "fetchThreadNumber", defaultTaskType.getFetchThreadNumber()));
+    scheduleTaskType.setRangeTaskItemNumber(getIntParameter(request, "rangeTaskItemNumber", defaultTaskType.getRangeTaskItemNumber()));
+  }
+
+  private int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+    return StringUtils.isEmpty(request.getParameter(name)) ? defaultValue : Integer.valueOf(request.getParameter(name));
+  }
+
+  private boolean getBooleanParameter(HttpServletRequest request, String name, boolean defaultValue) {
+    return StringUtils.isEmpty(request.getParameter(name)) ? defaultValue : Boolean.valueOf(request.getParameter(name));
+  }
+
+  private long getLongParameter(HttpServletRequest request, String name, long defaultValue) {
+    return StringUtils.isEmpty(request.getParameter(name)) ? defaultValue : Long.valueOf(request.getParameter(name));
+  }
+
+}
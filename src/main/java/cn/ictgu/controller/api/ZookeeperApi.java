@@ -54,4 +54,16 @@ public class ZookeeperApi {
     return message;
   }
 
+  @RequestMapping("/migrate")
+  public String migrate(HttpServletRequest request) {
+    String message = "success";
+    try {
+      boolean force = "true".equalsIgnoreCase(request.getParameter("force"));
+      factory.getScheduleDataManager().migrateTaskItemLayout(force);
+    } catch (Throwable e) {
+      message = "ERROR: " + e.getMessage();
+    }
+    return message;
+  }
+
 }
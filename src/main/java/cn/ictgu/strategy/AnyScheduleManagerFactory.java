@@ -5,6 +5,8 @@ import cn.ictgu.commen.ScheduleUtil;
 import cn.ictgu.config.ZookeeperProperties;
 import cn.ictgu.taskmanager.AnyScheduleManagerStatic;
 import cn.ictgu.taskmanager.IScheduleDataManager;
+import cn.ictgu.taskmanager.ScheduleTaskType;
+import cn.ictgu.taskmanager.SharedTaskExecutor;
 import cn.ictgu.zk.ScheduleDataManager4ZK;
 import cn.ictgu.zk.ScheduleStrategyDataManager4ZK;
 import cn.ictgu.zk.ZKManager;
@@ -19,6 +21,7 @@ import org.springframework.stereotype.Component;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Timer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
@@ -55,6 +58,9 @@ public class AnyScheduleManagerFactory implements ApplicationContextAware {
 
   private Map<String, List<IStrategyTask>> managerMap = new ConcurrentHashMap<>();
 
+  // 每个策略的一个调度器占用的处理线程数，创建调度器时更新
+  private Map<String, Integer> strategyThreadCost = new ConcurrentHashMap<>();
+
   private ApplicationContext applicationcontext;
 
   private String uuid;
@@ -69,6 +75,9 @@ public class AnyScheduleManagerFactory implements ApplicationContextAware {
 
   private InitialThread initialThread;
 
+  // SHARED模式共用的处理线程池，第一次使用时创建
+  private SharedTaskExecutor sharedTaskExecutor;
+
   public AnyScheduleManagerFactory() {
     this.ip = ScheduleUtil.getLocalIP();
     this.hostName = ScheduleUtil.getLocalHostName();
@@ -181,10 +190,74 @@ public class AnyScheduleManagerFactory implements ApplicationContextAware {
     for (String strategyName : stopList) {
       this.stopServer(strategyName);
     }
+    this.updateStrategyMaxNum();
     this.assignScheduleServer();
     this.reRunScheduleServer();
   }
 
+  // 发布当前机器按资源上限最多可以承担的任务数量，供Leader分配时参考
+  private void updateStrategyMaxNum() throws Exception {
+    for (ScheduleStrategyRuntime run : this.scheduleStrategyManager.loadAllScheduleStrategyRuntimeByUUID(this.uuid)) {
+      ScheduleStrategy strategy = this.scheduleStrategyManager.loadStrategy(run.getStrategyName());
+      if (strategy == null) {
+        continue;
+      }
+      Integer maxNum = this.getMaxNumOfStrategy(strategy);
+      if (!Objects.equals(maxNum, run.getMaxNum())) {
+        this.scheduleStrategyManager.updateStrategyRuntimeMaxNum(run.getStrategyName(), this.uuid, maxNum);
+      }
+    }
+  }
+
+  /**
+   * 当前机器最多可以运行的该策略的调度器数量，null表示不限制
+   * 1、不超过策略的单JVM最大线程组数量numOfSingleServer
+   * 2、加上其它策略的调度器后，不超过zookeeper.maxManagerNumber
+   * 3、加上其它策略的处理线程后，不超过zookeeper.maxThreadNumber
+   */
+  private Integer getMaxNumOfStrategy(ScheduleStrategy strategy) {
+    int maxNum = strategy.getNumOfSingleServer() > 0 ? strategy.getNumOfSingleServer() : Integer.MAX_VALUE;
+    int otherManagerNum = 0;
+    int otherThreadNum = 0;
+    for (Map.Entry<String, List<IStrategyTask>> entry : this.managerMap.entrySet()) {
+      if (entry.getKey().equals(strategy.getStrategyName())) {
+        continue;
+      }
+      otherManagerNum = otherManagerNum + entry.getValue().size();
+      otherThreadNum = otherThreadNum + entry.getValue().size() * this.strategyThreadCost.getOrDefault(entry.getKey(), 1);
+    }
+    Integer maxManagerNumber = this.properties == null ? null : this.properties.getMaxManagerNumber();
+    if (maxManagerNumber != null && maxManagerNumber > 0) {
+      maxNum = Math.min(maxNum, maxManagerNumber - otherManagerNum);
+    }
+    Integer maxThreadNumber = this.properties == null ? null : this.properties.getMaxThreadNumber();
+    if (maxThreadNumber != null && maxThreadNumber > 0) {
+      int threadCost = this.strategyThreadCost.computeIfAbsent(strategy.getStrategyName(), name -> this.getThreadCost(strategy));
+      maxNum = Math.min(maxNum, (maxThreadNumber - otherThreadNum) / threadCost);
+    }
+    if (maxNum == Integer.MAX_VALUE) {
+      return null;
+    }
+    return Math.max(maxNum, 0);
+  }
+
+  // 一个调度器占用的处理线程数，共享线程池和虚拟线程只计算分发线程
+  private int getThreadCost(ScheduleStrategy strategy) {
+    if (ScheduleStrategy.Kind.Schedule != strategy.getKind()) {
+      return 1;
+    }
+    try {
+      ScheduleTaskType taskType = this.scheduleDataManager.loadTaskTypeBaseInfo(ScheduleUtil.splitBaseTaskTypeFromTaskType(strategy.getTaskName()));
+      if (taskType == null || "SHARED".equalsIgnoreCase(taskType.getProcessorType()) || "VIRTUAL".equalsIgnoreCase(taskType.getProcessorType())) {
+        return 1;
+      }
+      return Math.max(Math.max(taskType.getThreadNumber(), taskType.getMaxThreads()), 1);
+    } catch (Exception e) {
+      log.error("获取任务类型的线程数出错：strategyName=" + strategy.getStrategyName(), e);
+      return 1;
+    }
+  }
+
   // 根据策略重新分配调度任务的机器
   private void assignScheduleServer() throws Exception {
     for (ScheduleStrategyRuntime run : this.scheduleStrategyManager.loadAllScheduleStrategyRuntimeByUUID(this.uuid)) {
@@ -194,7 +267,23 @@ public class AnyScheduleManagerFactory implements ApplicationContextAware {
         continue;
       }
       ScheduleStrategy scheduleStrategy = this.scheduleStrategyManager.loadStrategy(run.getStrategyName());
-      int[] nums = ScheduleUtil.assignTaskNumber(factoryList.size(), scheduleStrategy.getAssignNum());
+      //按每台机器的资源上限分配，小机器不再平均分到同样多的调度器
+      int[] maxNums = new int[factoryList.size()];
+      for (int i = 0; i < factoryList.size(); i++) {
+        Integer maxNum = factoryList.get(i).getMaxNum();
+        maxNums[i] = maxNum == null ? Integer.MAX_VALUE : maxNum;
+        if (scheduleStrategy.getNumOfSingleServer() > 0) {
+          maxNums[i] = Math.min(maxNums[i], scheduleStrategy.getNumOfSingleServer());
+        }
+      }
+      int[] nums = ScheduleUtil.assignTaskNumber(maxNums, scheduleStrategy.getAssignNum());
+      int assignedNum = 0;
+      for (int num : nums) {
+        assignedNum = assignedNum + num;
+      }
+      if (assignedNum < scheduleStrategy.getAssignNum()) {
+        log.warn("策略" + run.getStrategyName() + "可用的机器资源不足，需要" + scheduleStrategy.getAssignNum() + "个调度器，只分配了" + assignedNum + "个");
+      }
       for (int i = 0; i < factoryList.size(); i++) {
         ScheduleStrategyRuntime factory = factoryList.get(i);
         //更新请求的服务器数量
@@ -236,7 +325,17 @@ public class AnyScheduleManagerFactory implements ApplicationContextAware {
       }
       //不足，增加调度器
       ScheduleStrategy strategy = this.scheduleStrategyManager.loadStrategy(run.getStrategyName());
+      if (list.size() < run.getRequestNum()) {
+        this.strategyThreadCost.put(run.getStrategyName(), this.getThreadCost(strategy));
+      }
+      Integer maxNum = list.size() < run.getRequestNum() ? this.getMaxNumOfStrategy(strategy) : null;
       while (list.size() < run.getRequestNum()) {
+        if (maxNum != null && list.size() >= maxNum) {
+          String message = "超过单JVM的资源上限，最多运行" + maxNum + "个调度器，请求" + run.getRequestNum() + "个";
+          log.warn("策略" + run.getStrategyName() + message);
+          this.scheduleStrategyManager.updateStrategyRuntimeErrorMessage(run.getStrategyName(), this.uuid, message);
+          break;
+        }
         IStrategyTask result = this.createStrategyTask(strategy);
         if (null == result) {
           log.error("strategy 对应的配置有问题。strategy name=" + strategy.getStrategyName());
@@ -280,6 +379,52 @@ public class AnyScheduleManagerFactory implements ApplicationContextAware {
     }
   }
 
+  /**
+   * 唤醒当前服务器上该任务类型没有取到数据而休眠的处理器，立即重新获取数据
+   *
+   * @param baseTaskType 任务类型
+   */
+  public void wakeUp(String baseTaskType) {
+    for (List<IStrategyTask> list : this.managerMap.values()) {
+      for (IStrategyTask task : list) {
+        if (task instanceof AnyScheduleManagerStatic
+            && ScheduleUtil.splitBaseTaskTypeFromTaskType(((AnyScheduleManagerStatic) task).getTaskType()).equals(baseTaskType)) {
+          ((AnyScheduleManagerStatic) task).wakeUp();
+        }
+      }
+    }
+  }
+
+  /**
+   * 本机处理该任务类型的调度器的耗时分布，每个调度器一行
+   */
+  public String getLatencyDescription(String baseTaskType) {
+    StringBuilder result = new StringBuilder();
+    for (List<IStrategyTask> list : this.managerMap.values()) {
+      for (IStrategyTask task : list) {
+        if (task instanceof AnyScheduleManagerStatic
+            && ScheduleUtil.splitBaseTaskTypeFromTaskType(((AnyScheduleManagerStatic) task).getTaskType()).equals(baseTaskType)) {
+          result.append(((AnyScheduleManagerStatic) task).getLatencyDescription()).append("\n");
+        }
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * SHARED模式共用的处理线程池，线程数由 zookeeper.sharedThreadNumber 配置
+   */
+  public synchronized SharedTaskExecutor getSharedTaskExecutor() {
+    if (this.sharedTaskExecutor == null) {
+      Integer threadNumber = this.properties == null ? null : this.properties.getSharedThreadNumber();
+      if (threadNumber == null || threadNumber <= 0) {
+        threadNumber = Runtime.getRuntime().availableProcessors() * 2;
+      }
+      this.sharedTaskExecutor = new SharedTaskExecutor(threadNumber);
+    }
+    return this.sharedTaskExecutor;
+  }
+
   // 停止所有调度资源
   public void stopAll() throws Exception {
     try {
@@ -297,6 +442,12 @@ public class AnyScheduleManagerFactory implements ApplicationContextAware {
         this.timer = null;
       }
       this.stopServer(null);
+      synchronized (this) {
+        if (this.sharedTaskExecutor != null) {
+          this.sharedTaskExecutor.shutdown();
+          this.sharedTaskExecutor = null;
+        }
+      }
       if (this.zkManager != null) {
         this.zkManager.close();
       }
@@ -33,6 +33,9 @@ public class ScheduleStrategyRuntime {
   // 当前的任务数量
   int currentNum;
 
+  // 当前机器按资源上限最多可以承担的任务数量，null表示不限制
+  Integer maxNum;
+
   // 信息
   String message;
 }
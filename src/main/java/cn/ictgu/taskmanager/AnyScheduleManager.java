@@ -13,6 +13,7 @@ package cn.ictgu.taskmanager;
   import java.util.Timer;
   import java.util.concurrent.CopyOnWriteArrayList;
   import java.util.concurrent.atomic.AtomicLong;
+  import java.util.concurrent.TimeUnit;
   import java.util.concurrent.locks.Lock;
   import java.util.concurrent.locks.ReentrantLock;
 
@@ -68,6 +69,16 @@ abstract class AnyScheduleManager implements IStrategyTask {
 
   private StatisticsInfo statisticsInfo = new StatisticsInfo();
 
+  /**
+   * 每次获取数据数量的控制器
+   */
+  FetchSizeController fetchSizeController;
+
+  /**
+   * 没有取到数据时的休眠，可以被提前唤醒
+   */
+  NoDataSleeper noDataSleeper;
+
   boolean isPauseSchedule = true;
   private String pauseMessage = "";
   /**
@@ -128,6 +139,8 @@ abstract class AnyScheduleManager implements IStrategyTask {
       throw new Exception("SpringBean " + this.taskTypeInfo.getDealBeanName() + " 没有实现 IScheduleTaskDeal接口");
     }
     this.taskDealBean = (IScheduleTaskDeal) dealBean;
+    this.fetchSizeController = new FetchSizeController(this.taskTypeInfo, this.statisticsInfo);
+    this.noDataSleeper = new NoDataSleeper(this.taskTypeInfo);
 
     if (this.taskTypeInfo.getJudgeDeadInterval() < this.taskTypeInfo.getHeartBeatRate() * 5) {
       throw new Exception("数据配置存在问题，死亡的时间间隔，至少要大于心跳线程的5倍。当前配置数据：JudgeDeadInterval = "
@@ -171,6 +184,22 @@ abstract class AnyScheduleManager implements IStrategyTask {
     return this.currentScheduleServer.getTaskType();
   }
 
+  /**
+   * 唤醒没有取到数据而休眠的处理器，立即重新获取数据
+   */
+  public void wakeUp() {
+    this.noDataSleeper.wakeUp();
+  }
+
+  /**
+   * execute、selectTasks耗时和批处理数量的分布，格式为“uuid 名称 p50/p90/p99/max”
+   */
+  public String getLatencyDescription() {
+    return this.currentScheduleServer.getUuid() + " " + this.statisticsInfo.getExecuteTimeDescription()
+           + ":" + this.statisticsInfo.getFetchTimeDescription()
+           + ":" + this.statisticsInfo.getBatchSizeDescription();
+  }
+
   public void initialTaskParameter(String strategyName, String taskParameter) {
     //没有实现的方法，需要的参数直接从任务配置中读取
   }
@@ -211,7 +240,13 @@ abstract class AnyScheduleManager implements IStrategyTask {
       }
       //先发送心跳信息
       if (startErrorInfo == null) {
-        this.currentScheduleServer.setDealInfoDesc(this.pauseMessage + ":" + this.statisticsInfo.getDealDescription());
+        this.currentScheduleServer.setDealInfoDesc(this.pauseMessage + ":" + this.statisticsInfo.getDealDescription() + ":" + this.fetchSizeController.getDescription()
+                                                  + ":" + this.statisticsInfo.getBatchSizeDescription()
+                                                  + ":" + this.statisticsInfo.getExecuteTimeDescription()
+                                                  + ":" + this.statisticsInfo.getFetchTimeDescription()
+                                                  + ":" + this.statisticsInfo.getHoldDescription()
+                                                  + ":" + this.statisticsInfo.getRetryDescription()
+                                                  + ":" + this.statisticsInfo.getExecuteTimeoutDescription());
       } else {
         this.currentScheduleServer.setDealInfoDesc(startErrorInfo);
       }
@@ -312,6 +347,7 @@ abstract class AnyScheduleManager implements IStrategyTask {
       }
       if (this.processor != null) {
         this.processor.stopSchedule();
+        this.noDataSleeper.wakeUp();
       }
       rewriteScheduleInfo();
     }
@@ -332,6 +368,14 @@ abstract class AnyScheduleManager implements IStrategyTask {
                                                                              .equalsIgnoreCase("NOTSLEEP")) {
           this.taskTypeInfo.setProcessorType("NOTSLEEP");
           this.processor = new AnyScheduleProcessorNotSleep(this, taskDealBean, this.statisticsInfo);
+        } else if (this.taskTypeInfo.getProcessorType() != null && this.taskTypeInfo.getProcessorType()
+                                                                                    .equalsIgnoreCase("VIRTUAL")) {
+          this.taskTypeInfo.setProcessorType("VIRTUAL");
+          this.processor = new AnyScheduleProcessorVirtual(this, taskDealBean, this.statisticsInfo);
+        } else if (this.taskTypeInfo.getProcessorType() != null && this.taskTypeInfo.getProcessorType()
+                                                                                    .equalsIgnoreCase("SHARED")) {
+          this.taskTypeInfo.setProcessorType("SHARED");
+          this.processor = new AnyScheduleProcessorVirtual(this, taskDealBean, this.statisticsInfo);
         } else {
           this.processor = new AnyScheduleProcessorSleep(this, taskDealBean, this.statisticsInfo);
           this.taskTypeInfo.setProcessorType("SLEEP");
@@ -353,6 +397,7 @@ abstract class AnyScheduleManager implements IStrategyTask {
     this.isPauseSchedule = false;
     if (this.processor != null) {
       this.processor.stopSchedule();
+      this.noDataSleeper.wakeUp();
     } else {
       this.unRegisterScheduleServer();
     }
@@ -395,6 +440,10 @@ abstract class AnyScheduleManager implements IStrategyTask {
     return this.currentScheduleServer;
   }
 
+  SharedTaskExecutor getSharedTaskExecutor() {
+    return this.factory.getSharedTaskExecutor();
+  }
+
 }
 
 @Log4j
@@ -463,6 +512,15 @@ class StatisticsInfo {
   private AtomicLong dealDataFail = new AtomicLong(0);      //处理失败的数据量
   private AtomicLong dealSpendTime = new AtomicLong(0);     //处理总耗时,没有做同步，可能存在一定的误差
   private AtomicLong otherCompareCount = new AtomicLong(0); //特殊比较的次数
+  private AtomicLong retryNum = new AtomicLong(0);          //放入重试队列的数据量
+  private AtomicLong retryGiveUpNum = new AtomicLong(0);    //放弃重试的数据量
+  private AtomicLong executeTimeoutNum = new AtomicLong(0); //处理超时的次数
+  private AtomicLong pagedDataNum = new AtomicLong(0);      //超出预算分页装载的数据量
+  private volatile long holdDataNumber = 0;                 //最近一次装载后内存中持有的数据量
+  private volatile long maxHoldDataNumber = 0;              //内存中持有数据量的预算，0表示没有开启
+  private LogHistogram batchSizeHistogram = new LogHistogram(); //批处理数量的分布
+  private LogHistogram executeHistogram = new LogHistogram();   //单次execute的耗时分布，微秒
+  private LogHistogram fetchHistogram = new LogHistogram();     //单次selectTasks的耗时分布，微秒
 
   void addFetchDataNum(long value) {
     this.fetchDataNum.addAndGet(value);
@@ -484,6 +542,131 @@ class StatisticsInfo {
     this.dealSpendTime.addAndGet(value);
   }
 
+  void addRetryNum(long value) {
+    this.retryNum.addAndGet(value);
+  }
+
+  void addRetryGiveUpNum(long value) {
+    this.retryGiveUpNum.addAndGet(value);
+  }
+
+  /**
+   * 重试的数据量和放弃重试的数据量，没有重试时为空
+   */
+  String getRetryDescription() {
+    if (this.retryNum.get() == 0 && this.retryGiveUpNum.get() == 0) {
+      return "";
+    }
+    return "retry " + this.retryNum + "/" + this.retryGiveUpNum;
+  }
+
+  void addExecuteTimeoutNum(long value) {
+    this.executeTimeoutNum.addAndGet(value);
+  }
+
+  /**
+   * 处理超时的次数，没有超时时为空
+   */
+  String getExecuteTimeoutDescription() {
+    if (this.executeTimeoutNum.get() == 0) {
+      return "";
+    }
+    return "timeout " + this.executeTimeoutNum;
+  }
+
+  void addPagedDataNum(long value) {
+    this.pagedDataNum.addAndGet(value);
+  }
+
+  void setHoldDataNumber(long holdDataNumber, long maxHoldDataNumber) {
+    this.holdDataNumber = holdDataNumber;
+    this.maxHoldDataNumber = maxHoldDataNumber;
+  }
+
+  /**
+   * 内存中持有的数据量/预算和分页装载的数据量，没有开启预算时为空
+   */
+  String getHoldDescription() {
+    if (this.maxHoldDataNumber == 0) {
+      return "";
+    }
+    return "hold " + this.holdDataNumber + "/" + this.maxHoldDataNumber + (this.pagedDataNum.get() > 0 ? "(paged " + this.pagedDataNum + ")" : "");
+  }
+
+  void addBatchSize(int size) {
+    if (size <= 0) {
+      return;
+    }
+    this.batchSizeHistogram.record(size);
+  }
+
+  /**
+   * 批处理数量的 p50/p90/p99/max，没有批处理时为空
+   */
+  String getBatchSizeDescription() {
+    return describe("batch", this.batchSizeHistogram, false);
+  }
+
+  /**
+   * 记录一次execute的耗时
+   * @param spendNanos System.nanoTime 计算的耗时
+   */
+  void addExecuteTime(long spendNanos) {
+    this.executeHistogram.record(TimeUnit.NANOSECONDS.toMicros(spendNanos));
+  }
+
+  /**
+   * execute耗时的 p50/p90/p99/max，没有处理过数据时为空
+   */
+  String getExecuteTimeDescription() {
+    return describe("execute", this.executeHistogram, true);
+  }
+
+  /**
+   * 记录一次selectTasks的耗时
+   * @param spendNanos System.nanoTime 计算的耗时
+   */
+  void addFetchTime(long spendNanos) {
+    this.fetchHistogram.record(TimeUnit.NANOSECONDS.toMicros(spendNanos));
+  }
+
+  /**
+   * selectTasks耗时的 p50/p90/p99/max，没有获取过数据时为空
+   */
+  String getFetchTimeDescription() {
+    return describe("fetch", this.fetchHistogram, true);
+  }
+
+  private static String describe(String name, LogHistogram histogram, boolean isTime) {
+    if (histogram.getCount() == 0) {
+      return "";
+    }
+    return name + " " + format(histogram.getValueAtPercentile(50), isTime)
+           + "/" + format(histogram.getValueAtPercentile(90), isTime)
+           + "/" + format(histogram.getValueAtPercentile(99), isTime)
+           + "/" + format(histogram.getMax(), isTime);
+  }
+
+  /**
+   * 耗时按微秒记录，展示时换算成合适的单位
+   */
+  private static String format(long value, boolean isTime) {
+    if (!isTime) {
+      return String.valueOf(value);
+    }
+    if (value < 1000) {
+      return value + "us";
+    }
+    if (value < 1000000) {
+      return String.format("%.1fms", value / 1000.0);
+    }
+    return String.format("%.1fs", value / 1000000.0);
+  }
+
+  long getDealDataCount() {
+    return this.dealDataSuccess.get() + this.dealDataFail.get();
+  }
+
   void addOtherCompareCount(long value) {
     this.otherCompareCount.addAndGet(value);
   }
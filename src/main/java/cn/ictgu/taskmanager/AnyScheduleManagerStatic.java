@@ -1,5 +1,6 @@
 package cn.ictgu.taskmanager;
 
+import cn.ictgu.commen.ScheduleUtil;
 import cn.ictgu.commen.TaskItemDefine;
 import cn.ictgu.strategy.AnyScheduleManagerFactory;
 import lombok.extern.log4j.Log4j;
@@ -7,6 +8,8 @@ import org.apache.zookeeper.data.Stat;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 静态调度
@@ -94,8 +97,12 @@ public class AnyScheduleManagerStatic extends AnyScheduleManager {
           }
           log.info("获取到任务处理队列，开始调度：" + tmpStr + "  of  " + currentScheduleServer.getUuid());
 
-          //任务总量
-          taskItemCount = scheduleCenter.loadAllTaskItem(currentScheduleServer.getTaskType()).size();
+          //任务总量，区间任务项按区间的长度计算
+          long totalSize = 0;
+          for (ScheduleTaskItem taskItem : scheduleCenter.loadAllTaskItem(currentScheduleServer.getTaskType())) {
+            totalSize = totalSize + ScheduleUtil.getTaskItemSize(taskItem.getTaskItem());
+          }
+          taskItemCount = (int) Math.min(totalSize, Integer.MAX_VALUE);
 
           //只有在已经获取到任务处理队列后才开始启动任务处理器
           computerStart();
@@ -229,9 +236,14 @@ public class AnyScheduleManagerStatic extends AnyScheduleManager {
       if (this.isNeedReloadTaskItem) {
         //特别注意：需要判断数据队列是否已经空了，否则可能在队列切换的时候导致数据重复处理
         //主要是在线程不休眠就加载数据的时候一定需要这个判断
+        //处理器在最后一个处理中的任务结束时完成future，超时只是防止遗漏信号的保护
         if (this.processor != null) {
           while (!this.processor.isDealFinishAllData()) {
-            Thread.sleep(50);
+            try {
+              this.processor.whenDealFinishAllData().get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+              log.debug("等待内存中的数据处理完毕超时，重新检查");
+            }
           }
         }
         //真正开始处理数据
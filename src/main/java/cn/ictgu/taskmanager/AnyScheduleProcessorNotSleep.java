@@ -1,8 +1,11 @@
 package cn.ictgu.taskmanager;
 
 import cn.ictgu.commen.IScheduleTaskDeal;
+import cn.ictgu.commen.IScheduleTaskDealAsync;
 import cn.ictgu.commen.IScheduleTaskDealMulti;
+import cn.ictgu.commen.IScheduleTaskDealMultiList;
 import cn.ictgu.commen.IScheduleTaskDealSingle;
+import cn.ictgu.commen.IScheduleTaskDealStream;
 import cn.ictgu.commen.TaskItemDefine;
 import lombok.extern.log4j.Log4j;
 
@@ -11,7 +14,20 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -24,6 +40,14 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
 
   private List<Thread> threadList = new CopyOnWriteArrayList<>();
 
+  /**
+   * 弹性线程数的策略，没有开启时为null
+   */
+  private ElasticThreadPolicy elasticThreadPolicy;
+
+  // 下一个线程的编号
+  private final AtomicInteger threadIndex = new AtomicInteger(0);
+
   /**
    * 任务管理器
    */
@@ -44,9 +68,19 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
    */
   private Comparator<T> taskComparator;
 
+  /**
+   * 内存中的数据处理完毕的信号
+   */
+  private final DrainSignal drainSignal = new DrainSignal(this::isDealFinishAllData);
+
+  /**
+   * 按分区有序处理时，所有通道的任务都已经取完的信号，空闲通道的线程等待它之后再装载数据
+   */
+  private final DrainSignal laneDrainSignal = new DrainSignal(() -> this.getTaskCount() == 0 || this.isStopSchedule);
+
   private StatisticsInfo statisticsInfo;
 
-  private List<T> taskList =new CopyOnWriteArrayList<>();
+  private final TaskQueue<T> taskList;
 
   /**
    * 正在处理中的任务队列
@@ -54,19 +88,86 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
   private List<Object> runningTaskList = new CopyOnWriteArrayList<>();
 
   /**
-   * 在重新取数据，可能会重复的数据。在重新去数据前，从runningTaskList拷贝得来
+   * 在重新取数据，可能会重复的数据。在重新去数据前，从runningTaskList拷贝得来，整体替换
    */
-  private List<T> maybeRepeatTaskList = new CopyOnWriteArrayList<>();
+  private volatile List<T> maybeRepeatTaskList = new CopyOnWriteArrayList<>();
+
+  /**
+   * 可能会重复的数据的唯一标识，任务处理类实现了getTaskKey时使用，与maybeRepeatTaskList一起整体替换
+   */
+  private volatile Set<Object> maybeRepeatTaskKeys = ConcurrentHashMap.newKeySet();
 
-  private Lock lockFetchID = new ReentrantLock();
-  private Lock lockFetchMultiID = new ReentrantLock();
   private Lock lockLoadData = new ReentrantLock();
 
+  /**
+   * 预取下一批数据的线程，没有开启预取时为null
+   */
+  private ExecutorService prefetchExecutor;
+
+  /**
+   * 正在预取或者已经预取完成的下一批数据
+   */
+  private volatile Future<PrefetchData> prefetchFuture;
+
   /**
    * 是否可以批处理
    */
   private boolean isMultiTask = false;
 
+  /**
+   * 任务处理类是否以列表方式批处理
+   */
+  private boolean isListTask = false;
+
+  /**
+   * 每个处理线程的批处理缓冲区
+   */
+  private final ThreadLocal<TaskBatchBuffer> batchBuffers = ThreadLocal.withInitial(TaskBatchBuffer::new);
+
+  /**
+   * 异步任务的提交者，任务处理类不是异步接口时为null
+   */
+  private AsyncTaskDealer asyncTaskDealer;
+
+  /**
+   * 以游标方式装载任务，任务处理类不是游标接口时为null
+   */
+  private StreamTaskLoader<T> streamTaskLoader;
+
+  /**
+   * 按任务项分组并行查询任务，没有开启时为null
+   */
+  private ParallelTaskFetcher<T> parallelTaskFetcher;
+
+  /**
+   * 按分区键分道的任务队列，开启按分区键顺序处理时代替taskList，否则为null
+   */
+  private PartitionTaskLanes<T> taskLanes;
+
+  // 下一个线程使用的通道编号
+  private final AtomicInteger laneIndex = new AtomicInteger(0);
+
+  // 每个线程使用的通道编号，处理超时的线程被放弃后，由新的线程接管它的通道
+  private final Map<Thread, Integer> threadLanes = new ConcurrentHashMap<>();
+
+  // 等待新的线程接管的通道编号
+  private final Queue<Integer> freeLanes = new ConcurrentLinkedQueue<>();
+
+  /**
+   * 处理失败的任务的重试队列，没有开启时为null。等待重试的任务也算作处理中，装载数据时会被去重
+   */
+  private TaskRetryQueue taskRetryQueue;
+
+  /**
+   * 内存中持有数据量的预算
+   */
+  private final FetchBudget<T> fetchBudget;
+
+  /**
+   * 处理超时的看门狗，没有开启时为null
+   */
+  private ExecuteTimeoutWatchdog executeTimeoutWatchdog;
+
   /**
    * 是否已经获得终止调度信号
    */
@@ -86,19 +187,61 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
     this.taskTypeInfo = this.scheduleManager.getTaskTypeInfo();
     this.taskDealBean = aTaskDealBean;
     this.taskComparator = new MYComparator(this.taskDealBean.getComparator());
-    if (this.taskDealBean instanceof IScheduleTaskDealSingle<?>) {
+    this.taskList = new TaskQueue<>(taskTypeInfo.getFetchDataNumber());
+    this.fetchBudget = new FetchBudget<>(taskTypeInfo, this.statisticsInfo);
+    if (this.taskDealBean instanceof IScheduleTaskDealSingle<?> || this.taskDealBean instanceof IScheduleTaskDealAsync<?>) {
       if (taskTypeInfo.getExecuteNumber() > 1) {
         taskTypeInfo.setExecuteNumber(1);
       }
       isMultiTask = false;
+      if (this.taskDealBean instanceof IScheduleTaskDealAsync<?>) {
+        this.asyncTaskDealer = new AsyncTaskDealer(this.scheduleManager, (IScheduleTaskDealAsync<?>) this.taskDealBean, this.statisticsInfo);
+      }
     } else {
       isMultiTask = true;
+      isListTask = this.taskDealBean instanceof IScheduleTaskDealMultiList<?>;
+    }
+    if (this.taskDealBean instanceof IScheduleTaskDealStream<?>) {
+      this.streamTaskLoader = new StreamTaskLoader<>(this.scheduleManager, (IScheduleTaskDealStream<T>) this.taskDealBean);
+    } else if (taskTypeInfo.getFetchGroupSize() > 0) {
+      this.parallelTaskFetcher = new ParallelTaskFetcher<>(this.scheduleManager, this.taskDealBean);
     }
     if (taskTypeInfo.getFetchDataNumber() < taskTypeInfo.getThreadNumber() * 10) {
       log.warn("参数设置不合理，系统性能不佳。【每次从数据库获取的数量fetchnum】 >= 【线程数量threadnum】 *【最少循环次数10】 ");
     }
-    for (int i = 0; i < taskTypeInfo.getThreadNumber(); i++) {
-      this.startThread(i);
+    if (taskTypeInfo.getPrefetchLowWaterMark() > 0) {
+      String threadName = this.scheduleManager.getScheduleServer().getTaskType() + "-" + this.scheduleManager.getCurrentSerialNumber() + "-prefetch";
+      this.prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, threadName);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    if (taskTypeInfo.isPartitionOrdered()) {
+      if (this.asyncTaskDealer != null) {
+        log.warn("异步任务不能保证处理顺序，忽略按分区键顺序处理的设置");
+      } else {
+        this.taskLanes = new PartitionTaskLanes<>(this.taskDealBean, taskTypeInfo.getThreadNumber(), taskTypeInfo.getFetchDataNumber());
+      }
+    }
+    if (taskTypeInfo.getMaxRetryTimes() > 0) {
+      if (this.asyncTaskDealer != null || this.taskLanes != null) {
+        log.warn("异步任务和按分区键顺序处理的任务不支持失败重试，忽略重试的设置");
+      } else {
+        this.taskRetryQueue = new TaskRetryQueue(taskTypeInfo, this.statisticsInfo);
+      }
+    }
+    if (taskTypeInfo.getExecuteTimeout() > 0 && this.asyncTaskDealer == null) {
+      this.executeTimeoutWatchdog = new ExecuteTimeoutWatchdog(this.scheduleManager, this.statisticsInfo, this::onExecuteTimeout);
+    }
+    int threadNumber = taskTypeInfo.getThreadNumber();
+    // 按分区键顺序处理时，线程与通道一一对应，线程数固定
+    if (taskTypeInfo.getMaxThreads() > 0 && this.taskLanes == null) {
+      this.elasticThreadPolicy = new ElasticThreadPolicy(taskTypeInfo);
+      threadNumber = this.elasticThreadPolicy.getInitialThreadNumber(threadNumber);
+    }
+    for (int i = 0; i < threadNumber; i++) {
+      this.startThread(this.threadIndex.getAndIncrement());
     }
   }
 
@@ -110,6 +253,24 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
     this.isStopSchedule = true;
     //清除所有未处理任务,但已经进入处理队列的，需要处理完毕
     this.taskList.clear();
+    if (this.taskLanes != null) {
+      this.taskLanes.clear();
+    }
+    if (this.taskRetryQueue != null) {
+      this.taskRetryQueue.clear();
+    }
+    this.prefetchFuture = null;
+    if (this.prefetchExecutor != null) {
+      this.prefetchExecutor.shutdown();
+    }
+    if (this.streamTaskLoader != null) {
+      this.streamTaskLoader.close();
+    }
+    if (this.parallelTaskFetcher != null) {
+      this.parallelTaskFetcher.shutdown();
+    }
+    this.drainSignal.signal();
+    this.laneDrainSignal.signal();
   }
 
   private void startThread(int index) {
@@ -120,15 +281,50 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
     thread.start();
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * 积压的任务较多时增加线程
+   */
+  private void addThreadIfNecessary() {
+    if (this.elasticThreadPolicy == null || this.isStopSchedule) {
+      return;
+    }
+    synchronized (this.threadList) {
+      if (!this.isStopSchedule && this.elasticThreadPolicy.isNeedMoreThread(this.taskList.size(), this.threadList.size())) {
+        this.startThread(this.threadIndex.getAndIncrement());
+        log.info("任务积压，增加处理线程，当前线程数：" + this.threadList.size());
+      }
+    }
+  }
+
+  /**
+   * 线程空闲超过保持时间时退出，返回true表示当前线程需要退出
+   */
+  private boolean retireThreadIfIdle(long lastBusyTime) {
+    if (this.elasticThreadPolicy == null || !this.elasticThreadPolicy.isIdleTooLong(lastBusyTime)) {
+      return false;
+    }
+    synchronized (this.threadList) {
+      if (this.isStopSchedule || this.threadList.size() <= this.elasticThreadPolicy.getMinThreads()) {
+        return false;
+      }
+      this.threadList.remove(Thread.currentThread());
+      log.info(Thread.currentThread().getName() + "：空闲超时，退出处理线程，当前线程数：" + this.threadList.size());
+    }
+    return true;
+  }
+
   private boolean isDealing(T aTask) {
-    if (this.maybeRepeatTaskList.size() == 0) {
+    Object taskKey = this.taskDealBean.getTaskKey(aTask);
+    if (taskKey != null) {
+      return this.maybeRepeatTaskKeys.remove(taskKey);
+    }
+    List<T> tmpList = this.maybeRepeatTaskList;
+    if (tmpList.size() == 0) {
       return false;
     }
-    T[] tmpList = (T[]) this.maybeRepeatTaskList.toArray();
     for (T tmp : tmpList) {
       if(this.taskComparator.compare(aTask, tmp) == 0){
-        this.maybeRepeatTaskList.remove(tmp);
+        tmpList.remove(tmp);
         return true;
       }
     }
@@ -136,65 +332,212 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
   }
 
   /**
-   * 获取单个任务，注意lock是必须，
-   * 否则在maybeRepeatTaskList的数据处理上会出现冲突
+   * 处理超时的线程被放弃，移出处理中的任务，补充一个新的处理线程
    */
-  private T getScheduleTaskId() {
-    lockFetchID.lock();
-    try {
-      T result;
-      while (true) {
-        if (this.taskList.size() > 0) {
-          result = this.taskList.remove(0); // 按正序处理
-        } else {
-          return null;
+  private void onExecuteTimeout(Thread thread, Object task) throws Exception {
+    this.runningTaskList.remove(task);
+    this.drainSignal.signal();
+    this.releaseThreadLane(thread);
+    synchronized (this.threadList) {
+      this.threadList.remove(thread);
+      if (!this.isStopSchedule) {
+        this.startThread(this.threadIndex.getAndIncrement());
+      } else if (this.threadList.size() == 0) {
+        if (this.executeTimeoutWatchdog != null) {
+          this.executeTimeoutWatchdog.shutdown();
         }
-        if (!this.isDealing(result)) {
-          return result;
+        this.scheduleManager.unRegisterScheduleServer();
+      }
+    }
+  }
+
+  /**
+   * 分配当前线程使用的通道，优先接管被放弃的线程的通道
+   */
+  private int acquireThreadLane() {
+    if (this.taskLanes == null) {
+      return 0;
+    }
+    Integer lane = this.freeLanes.poll();
+    if (lane == null) {
+      lane = this.laneIndex.getAndIncrement() % this.taskLanes.getLaneNumber();
+    }
+    this.threadLanes.put(Thread.currentThread(), lane);
+    return lane;
+  }
+
+  private void releaseThreadLane(Thread thread) {
+    Integer lane = this.threadLanes.remove(thread);
+    if (lane != null) {
+      this.freeLanes.offer(lane);
+    }
+  }
+
+  /**
+   * 调用任务处理类处理任务，开启了超时看门狗时记录处理的开始和结束
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private boolean execute(Object executeTask) throws Exception {
+    if (this.executeTimeoutWatchdog != null) {
+      this.executeTimeoutWatchdog.start(executeTask);
+    }
+    try {
+      if (!this.isMultiTask) {
+        return ((IScheduleTaskDealSingle) this.taskDealBean).execute(executeTask, scheduleManager.getScheduleServer().getOwnSign());
+      }
+      if (this.isListTask) {
+        TaskBatchBuffer batchBuffer = this.batchBuffers.get();
+        try {
+          return ((IScheduleTaskDealMultiList) this.taskDealBean).execute(batchBuffer.asList((Object[]) executeTask), scheduleManager.getScheduleServer().getOwnSign());
+        } finally {
+          batchBuffer.clearList();
         }
       }
+      return ((IScheduleTaskDealMulti) this.taskDealBean).execute((Object[]) executeTask, scheduleManager.getScheduleServer().getOwnSign());
     } finally {
-      lockFetchID.unlock();
+      if (this.executeTimeoutWatchdog != null) {
+        this.executeTimeoutWatchdog.finish();
+      }
     }
   }
 
   /**
-   * 获取单个任务，注意lock是必须，
-   * 否则在maybeRepeatTaskList的数据处理上会出现冲突
+   * 回收处理成功的批次，只有以列表方式批处理时批次才不会被任务处理类引用
    */
-  @SuppressWarnings("unchecked")
-  private T[] getScheduleTaskIdMulti() {
-    lockFetchMultiID.lock();
-    try {
-      if (this.taskList.size() == 0) {
+  private void recycleBatch(Object executeTask) {
+    if (this.isListTask) {
+      this.batchBuffers.get().recycle((Object[]) executeTask);
+    }
+  }
+
+  /**
+   * 获取单个任务，过滤掉maybeRepeatTaskList中正在处理的数据
+   */
+  private T getScheduleTaskId(int lane) {
+    T result;
+    while (true) {
+      result = this.taskLanes != null ? this.taskLanes.poll(lane) : this.taskList.poll(); // 按正序处理
+      if (result == null) {
         return null;
       }
-      int size = taskList.size() > taskTypeInfo.getExecuteNumber() ? taskTypeInfo
-        .getExecuteNumber() : taskList.size();
-
-      List<T> result = new ArrayList<>();
-      int point = 0;
-      T tmpObject;
-      while (point < size
-             && ((tmpObject = this.getScheduleTaskId()) != null)) {
-        result.add(tmpObject);
-        point = point + 1;
+      if (!this.isDealing(result)) {
+        return result;
       }
-      if (result.size() == 0) {
+    }
+  }
+
+  /**
+   * 批量获取任务，过滤掉maybeRepeatTaskList中正在处理的数据
+   */
+  @SuppressWarnings("unchecked")
+  private T[] getScheduleTaskIdMulti(int lane, int maxSize) {
+    while (true) {
+      int size = Math.min(this.taskLanes != null ? this.taskLanes.size(lane) : this.taskList.size(), maxSize);
+      if (size <= 0) {
         return null;
+      }
+      TaskBatchBuffer batchBuffer = this.batchBuffers.get();
+      Object[] tasks = batchBuffer.getScratch(size);
+      if (this.taskLanes != null) {
+        size = this.taskLanes.drainTo(lane, tasks, size);
       } else {
-        return result.toArray((T[]) Array.newInstance(result.get(0).getClass(), 0));
+        size = this.taskList.drainTo(tasks, size);
       }
-    } finally {
-      lockFetchMultiID.unlock();
+      int point = 0;
+      for (int i = 0; i < size; i++) {
+        if (!this.isDealing((T) tasks[i])) {
+          tasks[point] = tasks[i];
+          point = point + 1;
+        }
+      }
+      if (point > 0) {
+        return (T[]) batchBuffer.copyOf(point, this.isListTask ? null : tasks[0].getClass());
+      }
+    }
+  }
+
+  /**
+   * 批处理的数量不足minExecuteNumber时，最多等待executeLingerTime毫秒，从后续装载的数据中凑批
+   * 等待期间取到的任务都放在running队列中，避免重新取数据时重复，返回时替换为合并后的任务数组
+   * @param lane 当前线程的通道
+   * @param tasks 已经放入running队列的任务
+   */
+  @SuppressWarnings("unchecked")
+  private T[] lingerForMoreTasks(int lane, T[] tasks) {
+    int minSize = Math.min(taskTypeInfo.getMinExecuteNumber(), taskTypeInfo.getExecuteNumber());
+    if (tasks.length >= minSize || taskTypeInfo.getExecuteLingerTime() <= 0) {
+      return tasks;
+    }
+    List<T[]> parts = new ArrayList<>();
+    parts.add(tasks);
+    int size = tasks.length;
+    long endTime = System.currentTimeMillis() + taskTypeInfo.getExecuteLingerTime();
+    while (size < minSize && !this.isStopSchedule) {
+      long remainTime = endTime - System.currentTimeMillis();
+      if (remainTime <= 0) {
+        break;
+      }
+      T[] moreTasks = this.getScheduleTaskIdMulti(lane, taskTypeInfo.getExecuteNumber() - size);
+      if (moreTasks == null) {
+        // 等待其它线程装载数据
+        try {
+          Thread.sleep(Math.min(remainTime, 10));
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        continue;
+      }
+      this.runningTaskList.add(moreTasks);
+      parts.add(moreTasks);
+      size = size + moreTasks.length;
+    }
+    if (parts.size() == 1) {
+      return tasks;
+    }
+    T[] result = (T[]) Array.newInstance(tasks.getClass().getComponentType(), size);
+    int point = 0;
+    for (T[] part : parts) {
+      System.arraycopy(part, 0, result, point, part.length);
+      point = point + part.length;
     }
+    this.runningTaskList.add(result);
+    for (T[] part : parts) {
+      this.runningTaskList.remove(part);
+    }
+    return result;
   }
 
   public void clearAllHasFetchData(){
     this.taskList.clear();
+    this.fetchBudget.clear();
+    if (this.taskLanes != null) {
+      this.taskLanes.clear();
+    }
+    if (this.taskRetryQueue != null) {
+      this.taskRetryQueue.clear();
+    }
+    this.prefetchFuture = null;
+    if (this.streamTaskLoader != null) {
+      this.streamTaskLoader.close();
+    }
+    this.drainSignal.signal();
+    this.laneDrainSignal.signal();
   }
   public boolean isDealFinishAllData(){
-    return this.taskList.size() == 0 && this.runningTaskList.size() ==0;
+    return this.getTaskCount() == 0 && this.runningTaskList.size() ==0
+        && (this.taskRetryQueue == null || this.taskRetryQueue.isEmpty());
+  }
+
+  public CompletableFuture<Void> whenDealFinishAllData() {
+    return this.drainSignal.whenDrained();
+  }
+
+  /**
+   * 队列中未处理的任务数量
+   */
+  private int getTaskCount() {
+    return this.taskLanes != null ? this.taskLanes.size() : this.taskList.size();
   }
 
   public boolean isSleeping(){
@@ -207,12 +550,14 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
   private int loadScheduleData() {
     lockLoadData.lock();
     try {
-      if (this.taskList.size() > 0 || this.isStopSchedule) { // 判断是否有别的线程已经装载过了。
-        return this.taskList.size();
+      if (this.getTaskCount() > 0 || this.isStopSchedule) { // 判断是否有别的线程已经装载过了。
+        return this.getTaskCount();
       }
       // 在每次数据处理完毕后休眠固定的时间
       try {
-        if (this.taskTypeInfo.getSleepTimeInterval() > 0) {
+        //继续读取游标中剩余的数据时不休眠
+        if (this.taskTypeInfo.getSleepTimeInterval() > 0 && (this.streamTaskLoader == null || !this.streamTaskLoader.hasRemaining())
+            && !this.fetchBudget.hasOverflow()) {
           if (log.isTraceEnabled()) {
             log.trace("处理完一批数据后休眠："
                          + this.taskTypeInfo.getSleepTimeInterval());
@@ -229,38 +574,47 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
         log.error("休眠时错误", ex);
       }
 
-      putLastRunningTaskList();// 将running队列的数据拷贝到可能重复的队列中
-
       try {
-        List<TaskItemDefine> taskItems = this.scheduleManager
-          .getCurrentScheduleTaskItemList();
-        // 根据队列信息查询需要调度的数据，然后增加到任务列表中
-        if (taskItems.size() > 0) {
-          List<TaskItemDefine> tmpTaskList= new ArrayList<>();
-          synchronized(taskItems){
-            tmpTaskList.addAll(taskItems);
-          }
-          List<T> tmpList = this.taskDealBean.selectTasks(taskTypeInfo.getTaskParameter(), scheduleManager.getScheduleServer().getOwnSign(), this.scheduleManager.getTaskItemCount(), tmpTaskList, taskTypeInfo.getFetchDataNumber());
-          scheduleManager.getScheduleServer().setLastFetchDataTime(new Timestamp(scheduleManager.scheduleCenter.getSystemTime()));
-          if (tmpList != null) {
-            this.taskList.addAll(tmpList);
-          }
+        List<T> tmpList;
+        long wakeUpGeneration = this.scheduleManager.noDataSleeper.generation();
+        PrefetchData prefetchData = this.takePrefetchData();
+        if (prefetchData != null) {
+          // 使用预取的数据，预取时还在队列中和正在处理的数据都可能重复
+          this.setMaybeRepeatTasks(prefetchData.maybeRepeatTasks);
+          tmpList = prefetchData.tasks;
+          wakeUpGeneration = prefetchData.wakeUpGeneration;
+        } else if (this.fetchBudget.hasOverflow()) {
+          // 装载超出预算暂存的数据，这些数据与上次获取的数据是同一批，可能重复的数据不变
+          tmpList = this.fetchBudget.nextPage(this.getTaskCount());
         } else {
-          log.info("没有任务分配");
+          putLastRunningTaskList();// 将running队列的数据拷贝到可能重复的队列中
+          tmpList = this.selectTasks(this.scheduleManager.getCurrentScheduleTaskItemList());
         }
-        addFetchNum(taskList.size());
-        if (taskList.size() <= 0) {
+        if (tmpList != null && this.taskLanes != null) {
+          this.taskLanes.addAll(tmpList);
+        } else if (tmpList != null) {
+          this.taskList.addAll(tmpList);
+        }
+        addFetchNum(this.getTaskCount());
+        if (this.getTaskCount() <= 0) {
           // 判断当没有数据的是否，是否需要退出调度
           if (this.scheduleManager.isContinueWhenData()) {
             if (taskTypeInfo.getSleepTimeNoData() > 0) {
-              log.info("没有读取到需要处理的数据,sleep " + taskTypeInfo.getSleepTimeNoData());
+              // 休眠期间持有lockLoadData，有等待重试的任务时最多休眠到下一个重试任务到期，避免推迟重试
+              long maxSleepTime = this.taskRetryQueue != null ? this.taskRetryQueue.getNextRetryDelay() : -1;
+              if (maxSleepTime < 0) {
+                maxSleepTime = Long.MAX_VALUE;
+              }
+              log.info("没有读取到需要处理的数据,sleep " + Math.min(taskTypeInfo.getSleepTimeNoData(), maxSleepTime));
               this.isSleeping = true;
-              Thread.sleep(taskTypeInfo.getSleepTimeNoData());
+              this.scheduleManager.noDataSleeper.sleep(wakeUpGeneration, maxSleepTime);
               this.isSleeping = false;
             }
           }
+        } else {
+          this.scheduleManager.noDataSleeper.reset();
         }
-        return this.taskList.size();
+        return this.getTaskCount();
       } catch (Throwable ex) {
         log.error("获取任务数据错误", ex);
       }
@@ -269,31 +623,146 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
       lockLoadData.unlock();
     }
   }
+
+  /**
+   * 根据队列信息查询需要调度的数据
+   */
+  private List<T> selectTasks(List<TaskItemDefine> taskItems) throws Exception {
+    if (taskItems.size() == 0) {
+      log.info("没有任务分配");
+      return null;
+    }
+    List<TaskItemDefine> tmpTaskList= new ArrayList<>();
+    synchronized(taskItems){
+      tmpTaskList.addAll(taskItems);
+    }
+    int fetchDataNumber = this.fetchBudget.limit(this.scheduleManager.fetchSizeController.getFetchDataNumber(), this.getTaskCount());
+    long fetchStartTime = scheduleManager.scheduleCenter.getSystemTime();
+    long fetchStartNanos = System.nanoTime();
+    List<T> tmpList;
+    if (this.streamTaskLoader != null) {
+      tmpList = this.streamTaskLoader.loadTasks(taskItems, fetchDataNumber);
+    } else if (this.parallelTaskFetcher != null) {
+      tmpList = this.parallelTaskFetcher.selectTasks(tmpTaskList, fetchDataNumber);
+    } else {
+      tmpList = this.taskDealBean.selectTasks(taskTypeInfo.getTaskParameter(), scheduleManager.getScheduleServer().getOwnSign(), this.scheduleManager.getTaskItemCount(), tmpTaskList, fetchDataNumber);
+    }
+    long fetchEndTime = scheduleManager.scheduleCenter.getSystemTime();
+    this.statisticsInfo.addFetchTime(System.nanoTime() - fetchStartNanos);
+    this.scheduleManager.fetchSizeController.onFetch(fetchDataNumber, tmpList == null ? 0 : tmpList.size(), fetchStartTime, fetchEndTime);
+    scheduleManager.getScheduleServer().setLastFetchDataTime(new Timestamp(fetchEndTime));
+    return this.fetchBudget.accept(tmpList, this.getTaskCount());
+  }
+
+  /**
+   * 队列中的任务低于低水位时，在后台预取下一批数据
+   */
+  private void prefetchIfNecessary() {
+    if (this.prefetchExecutor == null || this.prefetchFuture != null || this.isStopSchedule
+        || this.getTaskCount() > taskTypeInfo.getPrefetchLowWaterMark()
+        || this.scheduleManager.isNeedReloadTaskItem
+        || this.fetchBudget.hasOverflow()
+        || this.fetchBudget.limit(this.scheduleManager.fetchSizeController.getFetchDataNumber(), this.getTaskCount()) <= 0) {
+      return;
+    }
+    // 有线程正在装载数据时不需要预取
+    if (!lockLoadData.tryLock()) {
+      return;
+    }
+    try {
+      if (this.prefetchFuture == null) {
+        this.prefetchFuture = this.prefetchExecutor.submit(this::prefetchScheduleData);
+      }
+    } catch (RejectedExecutionException ex) {
+      log.debug("调度已经停止，不再预取数据");
+    } finally {
+      lockLoadData.unlock();
+    }
+  }
+
+  /**
+   * 预取下一批数据，同时记录预取时还在队列中和正在处理的任务
+   */
+  private PrefetchData prefetchScheduleData() throws Exception {
+    List<TaskItemDefine> taskItems = this.scheduleManager.getCurrentScheduleTaskItemList();
+    List<T> maybeRepeatTasks = this.taskLanes != null ? this.taskLanes.toList() : this.taskList.toList();
+    maybeRepeatTasks.addAll(this.getRunningTasks());
+    long wakeUpGeneration = this.scheduleManager.noDataSleeper.generation();
+    return new PrefetchData(taskItems, maybeRepeatTasks, this.selectTasks(taskItems), wakeUpGeneration);
+  }
+
+  /**
+   * 取出预取的数据，任务项已经重新分配时丢弃
+   */
+  private PrefetchData takePrefetchData() {
+    Future<PrefetchData> future = this.prefetchFuture;
+    if (future == null) {
+      return null;
+    }
+    try {
+      PrefetchData prefetchData = future.get();
+      if (this.scheduleManager.isNeedReloadTaskItem || prefetchData.taskItems != this.scheduleManager.currentTaskItemList) {
+        log.info("任务项已经重新分配，丢弃预取的数据");
+        return null;
+      }
+      return prefetchData;
+    } catch (Throwable ex) {
+      log.error("预取任务数据错误", ex);
+      return null;
+    } finally {
+      this.prefetchFuture = null;
+    }
+  }
+
   /**
    * 将running队列的数据拷贝到可能重复的队列中
    */
-  @SuppressWarnings("unchecked")
   private void putLastRunningTaskList() {
-    lockFetchID.lock();
-    try {
-      this.maybeRepeatTaskList.clear();
-      if (this.runningTaskList.size() == 0) {
-        return;
+    this.setMaybeRepeatTasks(this.getRunningTasks());
+  }
+
+  /**
+   * 替换可能会重复的数据，有唯一标识的任务放入maybeRepeatTaskKeys，其余的放入maybeRepeatTaskList
+   */
+  private void setMaybeRepeatTasks(List<T> tasks) {
+    Set<Object> taskKeys = ConcurrentHashMap.newKeySet();
+    List<T> tmpList = new ArrayList<>();
+    for (T task : tasks) {
+      Object taskKey = this.taskDealBean.getTaskKey(task);
+      if (taskKey != null) {
+        taskKeys.add(taskKey);
+      } else {
+        tmpList.add(task);
       }
-      Object[] tmpList = this.runningTaskList.toArray();
-      for (int i = 0; i < tmpList.length; i++) {
-        if (!this.isMultiTask) {
-          this.maybeRepeatTaskList.add((T) tmpList[i]);
-        } else {
-          T[] aTasks = (T[]) tmpList[i];
-          for (int j = 0; j < aTasks.length; j++) {
-            this.maybeRepeatTaskList.add(aTasks[j]);
+    }
+    this.maybeRepeatTaskKeys = taskKeys;
+    this.maybeRepeatTaskList = new CopyOnWriteArrayList<>(tmpList);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<T> getRunningTasks() {
+    List<T> result = new ArrayList<>();
+    List<Object> runningTasks = new ArrayList<>();
+    // 先取重试队列再取处理中的队列，任务从重试队列取出后才放入处理中的队列，不会遗漏
+    if (this.taskRetryQueue != null) {
+      runningTasks.addAll(this.taskRetryQueue.getPendingTasks());
+    }
+    runningTasks.addAll(this.runningTaskList);
+    Object[] tmpList = runningTasks.toArray();
+    for (int i = 0; i < tmpList.length; i++) {
+      if (!this.isMultiTask) {
+        result.add((T) tmpList[i]);
+      } else {
+        T[] aTasks = (T[]) tmpList[i];
+        for (int j = 0; j < aTasks.length; j++) {
+          // 批次可能刚处理完被回收
+          if (aTasks[j] != null) {
+            result.add(aTasks[j]);
           }
         }
       }
-    } finally {
-      lockFetchID.unlock();
     }
+    return result;
   }
 
   /**
@@ -303,56 +772,126 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
   public void run() {
     long startTime = 0;
     long sequence = 0;
+    long lastBusyTime = System.currentTimeMillis();
+    int lane = this.acquireThreadLane();
     Object executeTask;
+    int failTimes;
     while (true) {
       try {
         if (this.isStopSchedule) { // 停止队列调度
           synchronized (this.threadList) {
             this.threadList.remove(Thread.currentThread());
             if(this.threadList.size()==0){
+              if (this.executeTimeoutWatchdog != null) {
+                this.executeTimeoutWatchdog.shutdown();
+              }
               this.scheduleManager.unRegisterScheduleServer();
             }
           }
           return;
         }
-        // 加载调度任务
-        if (!this.isMultiTask) {
-          executeTask = this.getScheduleTaskId();
+        // 优先处理到期的重试任务
+        TaskRetryQueue.RetryTask retryTask = this.taskRetryQueue != null ? this.taskRetryQueue.poll() : null;
+        if (retryTask != null) {
+          executeTask = retryTask.task;
+          failTimes = retryTask.failTimes;
         } else {
-          executeTask = this.getScheduleTaskIdMulti();
+          // 加载调度任务
+          if (!this.isMultiTask) {
+            executeTask = this.getScheduleTaskId(lane);
+          } else {
+            executeTask = this.getScheduleTaskIdMulti(lane, taskTypeInfo.getExecuteNumber());
+          }
+          failTimes = 0;
         }
         if (executeTask == null ) {
+          this.drainSignal.signal();
+          if (this.retireThreadIfIdle(lastBusyTime)) {
+            return;
+          }
+          if (this.taskLanes != null && this.getTaskCount() > 0) {
+            // 其它通道的任务还没有处理完，等待全部取完后再装载数据
+            // 等待时间的上限只用于处理到期的重试任务和防止错过信号
+            long maxWaitTime = this.taskRetryQueue != null ? this.taskRetryQueue.getNextRetryDelay() : -1;
+            if (maxWaitTime < 0 || maxWaitTime > 1000) {
+              maxWaitTime = 1000;
+            }
+            try {
+              this.laneDrainSignal.whenDrained().get(maxWaitTime, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+              // 超时后重新检查
+            }
+            continue;
+          }
           this.loadScheduleData();
           continue;
         }
+        if (this.taskLanes != null) {
+          this.laneDrainSignal.signal();
+        }
+        lastBusyTime = System.currentTimeMillis();
+        this.prefetchIfNecessary();
+        this.addThreadIfNecessary();
+
+        if (this.asyncTaskDealer != null) {
+          // 异步任务在完成时才从running队列中移除
+          Object runningTask = executeTask;
+          this.runningTaskList.add(runningTask);
+          try {
+            this.asyncTaskDealer.execute(runningTask, () -> {
+              this.runningTaskList.remove(runningTask);
+              this.drainSignal.signal();
+            });
+          } catch (InterruptedException ex) {
+            this.runningTaskList.remove(runningTask);
+            this.drainSignal.signal();
+            throw ex;
+          }
+          continue;
+        }
 
+        boolean isBatchDone = false;
         try { // 运行相关的程序
           this.runningTaskList.add(executeTask);
-          startTime = scheduleManager.scheduleCenter.getSystemTime();
+          if (this.isMultiTask && failTimes == 0) {
+            executeTask = this.lingerForMoreTasks(lane, (T[]) executeTask);
+            this.statisticsInfo.addBatchSize(((Object[]) executeTask).length);
+          }
+          startTime = System.nanoTime();
           sequence = sequence + 1;
           if (!this.isMultiTask) {
-            if (((IScheduleTaskDealSingle<Object>) this.taskDealBean).execute(executeTask,scheduleManager.getScheduleServer().getOwnSign())) {
-              addSuccessNum(1, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+            if (this.execute(executeTask)) {
+              addSuccessNum(1, System.nanoTime() - startTime);
             } else {
-              addFailNum(1,scheduleManager.scheduleCenter.getSystemTime() - startTime);
+              addFailNum(1,System.nanoTime() - startTime);
+              this.retryIfNecessary(executeTask, failTimes + 1);
             }
           } else {
-            if (((IScheduleTaskDealMulti<Object>) this.taskDealBean)
-                  .execute((Object[]) executeTask,scheduleManager.getScheduleServer().getOwnSign())) {
-              addSuccessNum(((Object[]) executeTask).length, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+            if (this.execute(executeTask)) {
+              addSuccessNum(((Object[]) executeTask).length, System.nanoTime() - startTime);
+              isBatchDone = true;
             } else {
-              addFailNum(((Object[]) executeTask).length, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+              addFailNum(((Object[]) executeTask).length, System.nanoTime() - startTime);
+              this.retryIfNecessary(executeTask, failTimes + 1);
             }
           }
+        } catch (ExecuteTimeoutWatchdog.AbandonedException ex) {
+          // 处理超时，已经由新的线程代替，当前线程退出
+          return;
         } catch (Throwable ex) {
           if (!this.isMultiTask) {
-            addFailNum(1, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+            addFailNum(1, System.nanoTime() - startTime);
           } else {
-            addFailNum(((Object[]) executeTask).length, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+            addFailNum(((Object[]) executeTask).length, System.nanoTime() - startTime);
           }
           log.error("Task :" + executeTask + " 处理失败", ex);
+          this.retryIfNecessary(executeTask, failTimes + 1);
         } finally {
           this.runningTaskList.remove(executeTask);
+          this.drainSignal.signal();
+        }
+        if (isBatchDone) {
+          this.recycleBatch(executeTask);
         }
       } catch (Throwable e) {
         throw new RuntimeException(e);
@@ -361,19 +900,64 @@ class AnyScheduleProcessorNotSleep<T> implements IScheduleProcessor, Runnable  {
     }
   }
 
+  /**
+   * 处理失败的任务放入重试队列，超过重试次数时放弃。必须在从running队列移除之前调用，避免装载数据时漏掉去重
+   */
+  private void retryIfNecessary(Object executeTask, int failTimes) {
+    if (this.taskRetryQueue != null && !this.isStopSchedule) {
+      this.taskRetryQueue.retry(executeTask, failTimes);
+    }
+  }
+
   private void addFetchNum(long num) {
     this.statisticsInfo.addFetchDataCount(1);
     this.statisticsInfo.addFetchDataNum(num);
   }
 
-  private void addSuccessNum(long num, long spendTime) {
+  /**
+   * @param spendNanos System.nanoTime 计算的处理耗时
+   */
+  private void addSuccessNum(long num, long spendNanos) {
+    long spendTime = TimeUnit.NANOSECONDS.toMillis(spendNanos);
+    if (this.elasticThreadPolicy != null) {
+      this.elasticThreadPolicy.onTaskDone(num, spendTime);
+    }
     this.statisticsInfo.addDealDataSuccess(num);
     this.statisticsInfo.addDealSpendTime(spendTime);
+    this.statisticsInfo.addExecuteTime(spendNanos);
   }
 
-  private void addFailNum(long num, long spendTime) {
+  /**
+   * @param spendNanos System.nanoTime 计算的处理耗时
+   */
+  private void addFailNum(long num, long spendNanos) {
+    long spendTime = TimeUnit.NANOSECONDS.toMillis(spendNanos);
+    if (this.elasticThreadPolicy != null) {
+      this.elasticThreadPolicy.onTaskDone(num, spendTime);
+    }
     this.statisticsInfo.addDealDataFail(num);
     this.statisticsInfo.addDealSpendTime(spendTime);
+    this.statisticsInfo.addExecuteTime(spendNanos);
+  }
+
+  /**
+   * 预取的数据
+   */
+  private class PrefetchData {
+    // 预取时使用的任务项
+    final List<TaskItemDefine> taskItems;
+    // 预取时还在队列中和正在处理的任务
+    final List<T> maybeRepeatTasks;
+    final List<T> tasks;
+    // 预取前的唤醒次数，预取期间被唤醒时取不到数据也不休眠
+    final long wakeUpGeneration;
+
+    PrefetchData(List<TaskItemDefine> taskItems, List<T> maybeRepeatTasks, List<T> tasks, long wakeUpGeneration) {
+      this.taskItems = taskItems;
+      this.maybeRepeatTasks = maybeRepeatTasks;
+      this.tasks = tasks;
+      this.wakeUpGeneration = wakeUpGeneration;
+    }
   }
 
   private class MYComparator implements Comparator<T> {
@@ -1,16 +1,25 @@
 package cn.ictgu.taskmanager;
 
 import cn.ictgu.commen.IScheduleTaskDeal;
+import cn.ictgu.commen.IScheduleTaskDealAsync;
 import cn.ictgu.commen.IScheduleTaskDealMulti;
+import cn.ictgu.commen.IScheduleTaskDealMultiList;
 import cn.ictgu.commen.IScheduleTaskDealSingle;
+import cn.ictgu.commen.IScheduleTaskDealStream;
 import cn.ictgu.commen.TaskItemDefine;
 import lombok.extern.log4j.Log4j;
 
-import java.lang.reflect.Array;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SLEEP模式
@@ -21,6 +30,14 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
   private final LockObject m_lockObject = new LockObject();
   private List<Thread> threadList = new CopyOnWriteArrayList<>();
 
+  /**
+   * 弹性线程数的策略，没有开启时为null
+   */
+  private ElasticThreadPolicy elasticThreadPolicy;
+
+  // 下一个线程的编号
+  private final AtomicInteger threadIndex = new AtomicInteger(0);
+
   // 任务管理器
   private AnyScheduleManager scheduleManager;
 
@@ -38,19 +55,78 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
   //final Object lockRunningList = new Object();
 
   // 任务列表
-  private List<T> taskList = new CopyOnWriteArrayList<>();
+  private final TaskQueue<T> taskList;
 
   /**
    * 是否可以批处理
    */
   private boolean isMultiTask = false;
 
+  /**
+   * 任务处理类是否以列表方式批处理
+   */
+  private boolean isListTask = false;
+
+  /**
+   * 每个处理线程的批处理缓冲区
+   */
+  private final ThreadLocal<TaskBatchBuffer> batchBuffers = ThreadLocal.withInitial(TaskBatchBuffer::new);
+
+  /**
+   * 异步任务的提交者，任务处理类不是异步接口时为null
+   */
+  private AsyncTaskDealer asyncTaskDealer;
+
+  /**
+   * 以游标方式装载任务，任务处理类不是游标接口时为null
+   */
+  private StreamTaskLoader<T> streamTaskLoader;
+
+  /**
+   * 按任务项分组并行查询任务，没有开启时为null
+   */
+  private ParallelTaskFetcher<T> parallelTaskFetcher;
+
+  /**
+   * 按分区键分道的任务队列，开启按分区键顺序处理时代替taskList，否则为null
+   */
+  private PartitionTaskLanes<T> taskLanes;
+
+  // 下一个线程使用的通道编号
+  private final AtomicInteger laneIndex = new AtomicInteger(0);
+
+  // 每个线程使用的通道编号，处理超时的线程被放弃后，由新的线程接管它的通道
+  private final Map<Thread, Integer> threadLanes = new ConcurrentHashMap<>();
+
+  // 等待新的线程接管的通道编号
+  private final Queue<Integer> freeLanes = new ConcurrentLinkedQueue<>();
+
+  /**
+   * 处理失败的任务的重试队列，没有开启时为null
+   */
+  private TaskRetryQueue taskRetryQueue;
+
+  /**
+   * 内存中持有数据量的预算
+   */
+  private final FetchBudget<T> fetchBudget;
+
+  /**
+   * 处理超时的看门狗，没有开启时为null
+   */
+  private ExecuteTimeoutWatchdog executeTimeoutWatchdog;
+
   /**
    * 是否已经获得终止调度信号
    */
   private boolean isStopSchedule = false;   // 用户停止队列调度
   private boolean isSleeping = false;
 
+  /**
+   * 内存中的数据处理完毕的信号
+   */
+  private final DrainSignal drainSignal = new DrainSignal(this::isDealFinishAllData);
+
   private StatisticsInfo statisticsInfo;
 
   /**
@@ -64,19 +140,53 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
     this.statisticsInfo = statisticsInfo;
     this.taskTypeInfo = this.scheduleManager.getTaskTypeInfo();
     this.taskDealBean = taskDealBean;
-    if (this.taskDealBean instanceof IScheduleTaskDealSingle<?>) {
+    this.taskList = new TaskQueue<>(taskTypeInfo.getFetchDataNumber());
+    this.fetchBudget = new FetchBudget<>(taskTypeInfo, this.statisticsInfo);
+    if (this.taskDealBean instanceof IScheduleTaskDealSingle<?> || this.taskDealBean instanceof IScheduleTaskDealAsync<?>) {
       if (taskTypeInfo.getExecuteNumber() > 1) {
         taskTypeInfo.setExecuteNumber(1);
       }
       isMultiTask = false;
+      if (this.taskDealBean instanceof IScheduleTaskDealAsync<?>) {
+        this.asyncTaskDealer = new AsyncTaskDealer(this.scheduleManager, (IScheduleTaskDealAsync<?>) this.taskDealBean, this.statisticsInfo);
+      }
     } else {
       isMultiTask = true;
+      isListTask = this.taskDealBean instanceof IScheduleTaskDealMultiList<?>;
+    }
+    if (this.taskDealBean instanceof IScheduleTaskDealStream<?>) {
+      this.streamTaskLoader = new StreamTaskLoader<>(this.scheduleManager, (IScheduleTaskDealStream<T>) this.taskDealBean);
+    } else if (taskTypeInfo.getFetchGroupSize() > 0) {
+      this.parallelTaskFetcher = new ParallelTaskFetcher<>(this.scheduleManager, this.taskDealBean);
     }
     if (taskTypeInfo.getFetchDataNumber() < taskTypeInfo.getThreadNumber() * 10) {
       log.error("参数设置不合理，系统性能不佳。【每次从数据库获取的数量fetchnum】 >= 【线程数量threadnum】*【最少循环次数10】");
     }
-    for (int i = 0; i < taskTypeInfo.getThreadNumber(); i++) {
-      this.startThread(i);
+    if (taskTypeInfo.isPartitionOrdered()) {
+      if (this.asyncTaskDealer != null) {
+        log.warn("异步任务不能保证处理顺序，忽略按分区键顺序处理的设置");
+      } else {
+        this.taskLanes = new PartitionTaskLanes<>(this.taskDealBean, taskTypeInfo.getThreadNumber(), taskTypeInfo.getFetchDataNumber());
+      }
+    }
+    if (taskTypeInfo.getMaxRetryTimes() > 0) {
+      if (this.asyncTaskDealer != null || this.taskLanes != null) {
+        log.warn("异步任务和按分区键顺序处理的任务不支持失败重试，忽略重试的设置");
+      } else {
+        this.taskRetryQueue = new TaskRetryQueue(taskTypeInfo, this.statisticsInfo);
+      }
+    }
+    if (taskTypeInfo.getExecuteTimeout() > 0 && this.asyncTaskDealer == null) {
+      this.executeTimeoutWatchdog = new ExecuteTimeoutWatchdog(this.scheduleManager, this.statisticsInfo, this::onExecuteTimeout);
+    }
+    int threadNumber = taskTypeInfo.getThreadNumber();
+    // 按分区键顺序处理时，线程与通道一一对应，线程数固定
+    if (taskTypeInfo.getMaxThreads() > 0 && this.taskLanes == null) {
+      this.elasticThreadPolicy = new ElasticThreadPolicy(taskTypeInfo);
+      threadNumber = this.elasticThreadPolicy.getInitialThreadNumber(threadNumber);
+    }
+    for (int i = 0; i < threadNumber; i++) {
+      this.startThread(this.threadIndex.getAndIncrement());
     }
   }
 
@@ -88,6 +198,19 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
     this.isStopSchedule = true;
     // 清除所有未处理任务,但已经进入处理队列的，需要处理完毕
     this.taskList.clear();
+    if (this.taskLanes != null) {
+      this.taskLanes.clear();
+    }
+    if (this.taskRetryQueue != null) {
+      this.taskRetryQueue.clear();
+    }
+    if (this.streamTaskLoader != null) {
+      this.streamTaskLoader.close();
+    }
+    if (this.parallelTaskFetcher != null) {
+      this.parallelTaskFetcher.shutdown();
+    }
+    this.drainSignal.signal();
   }
 
   private void startThread(int index) {
@@ -98,34 +221,174 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
     thread.start();
   }
 
-  private synchronized Object getScheduleTaskId() {
-    if (this.taskList.size() > 0) {
-      return this.taskList.remove(0);   // 按正序处理
+  /**
+   * 积压的任务较多时增加线程
+   */
+  private void addThreadIfNecessary() {
+    if (this.elasticThreadPolicy == null || this.isStopSchedule) {
+      return;
+    }
+    synchronized (this.threadList) {
+      if (!this.isStopSchedule && this.elasticThreadPolicy.isNeedMoreThread(this.taskList.size(), this.threadList.size())) {
+        this.startThread(this.threadIndex.getAndIncrement());
+        log.info("任务积压，增加处理线程，当前线程数：" + this.threadList.size());
+      }
+    }
+  }
+
+  /**
+   * 线程空闲超过保持时间时退出，返回true表示当前线程需要退出
+   */
+  private boolean retireThreadIfIdle(long lastBusyTime) {
+    if (this.elasticThreadPolicy == null || !this.elasticThreadPolicy.isIdleTooLong(lastBusyTime)) {
+      return false;
     }
-    return null;
+    synchronized (this.threadList) {
+      if (this.isStopSchedule || this.threadList.size() <= this.elasticThreadPolicy.getMinThreads()) {
+        return false;
+      }
+      this.threadList.remove(Thread.currentThread());
+      log.info(Thread.currentThread().getName() + "：空闲超时，退出处理线程，当前线程数：" + this.threadList.size());
+    }
+    return true;
   }
 
-  private synchronized Object[] getScheduleTaskIdMulti() {
-    if (this.taskList.size() == 0) {
-      return null;
+  /**
+   * 处理超时的线程被放弃，补充一个新的处理线程
+   */
+  private void onExecuteTimeout(Thread thread, Object task) throws Exception {
+    // 超时的线程还计算在运行线程中，代替它释放，否则最后一个线程无法装载数据
+    this.m_lockObject.releaseThread();
+    this.releaseThreadLane(thread);
+    synchronized (this.threadList) {
+      this.threadList.remove(thread);
+      if (!this.isStopSchedule) {
+        this.startThread(this.threadIndex.getAndIncrement());
+      } else if (this.threadList.size() == 0) {
+        if (this.executeTimeoutWatchdog != null) {
+          this.executeTimeoutWatchdog.shutdown();
+        }
+        this.scheduleManager.unRegisterScheduleServer();
+      }
+    }
+    this.m_lockObject.notifyOtherThread();
+  }
+
+  /**
+   * 调用任务处理类处理任务，开启了超时看门狗时记录处理的开始和结束
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private boolean execute(Object executeTask) throws Exception {
+    if (this.executeTimeoutWatchdog != null) {
+      this.executeTimeoutWatchdog.start(executeTask);
     }
-    int size = taskList.size() > taskTypeInfo.getExecuteNumber() ? taskTypeInfo.getExecuteNumber() : taskList.size();
-    Object[] result = null;
-    if (size > 0) {
-      result = (Object[]) Array.newInstance(this.taskList.get(0).getClass(), size);
-      for (int i = 0; i < size; i++) {
-        result[i] = this.taskList.remove(0);  // 按正序处理
+    try {
+      if (!this.isMultiTask) {
+        return ((IScheduleTaskDealSingle) this.taskDealBean).execute(executeTask, scheduleManager.getScheduleServer().getOwnSign());
       }
+      if (this.isListTask) {
+        TaskBatchBuffer batchBuffer = this.batchBuffers.get();
+        try {
+          return ((IScheduleTaskDealMultiList) this.taskDealBean).execute(batchBuffer.asList((Object[]) executeTask), scheduleManager.getScheduleServer().getOwnSign());
+        } finally {
+          batchBuffer.clearList();
+        }
+      }
+      return ((IScheduleTaskDealMulti) this.taskDealBean).execute((Object[]) executeTask, scheduleManager.getScheduleServer().getOwnSign());
+    } finally {
+      if (this.executeTimeoutWatchdog != null) {
+        this.executeTimeoutWatchdog.finish();
+      }
+    }
+  }
+
+  /**
+   * 分配当前线程使用的通道，优先接管被放弃的线程的通道
+   */
+  private int acquireThreadLane() {
+    if (this.taskLanes == null) {
+      return 0;
     }
+    Integer lane = this.freeLanes.poll();
+    if (lane == null) {
+      lane = this.laneIndex.getAndIncrement() % this.taskLanes.getLaneNumber();
+    }
+    this.threadLanes.put(Thread.currentThread(), lane);
+    return lane;
+  }
+
+  private void releaseThreadLane(Thread thread) {
+    Integer lane = this.threadLanes.remove(thread);
+    if (lane != null) {
+      this.freeLanes.offer(lane);
+    }
+  }
+
+  /**
+   * 回收处理成功的批次，只有以列表方式批处理时批次才不会被任务处理类引用
+   */
+  private void recycleBatch(Object executeTask) {
+    if (this.isListTask) {
+      this.batchBuffers.get().recycle((Object[]) executeTask);
+    }
+  }
+
+  private Object getScheduleTaskId(int lane) {
+    if (this.taskLanes != null) {
+      return this.taskLanes.poll(lane);
+    }
+    return this.taskList.poll();   // 按正序处理
+  }
+
+  private Object[] getScheduleTaskIdMulti(int lane) {
+    int size = Math.min(this.taskLanes != null ? this.taskLanes.size(lane) : this.taskList.size(), taskTypeInfo.getExecuteNumber());
+    if (size <= 0) {
+      return null;
+    }
+    TaskBatchBuffer batchBuffer = this.batchBuffers.get();
+    Object[] tasks = batchBuffer.getScratch(size);
+    if (this.taskLanes != null) {
+      size = this.taskLanes.drainTo(lane, tasks, size);
+    } else {
+      size = this.taskList.drainTo(tasks, size);  // 按正序处理
+    }
+    if (size == 0) {
+      return null;
+    }
+    Object[] result = batchBuffer.copyOf(size, this.isListTask ? null : tasks[0].getClass());
+    this.statisticsInfo.addBatchSize(size);
     return result;
   }
 
   public void clearAllHasFetchData() {
     this.taskList.clear();
+    this.fetchBudget.clear();
+    if (this.taskLanes != null) {
+      this.taskLanes.clear();
+    }
+    if (this.taskRetryQueue != null) {
+      this.taskRetryQueue.clear();
+    }
+    if (this.streamTaskLoader != null) {
+      this.streamTaskLoader.close();
+    }
+    this.drainSignal.signal();
   }
 
   public boolean isDealFinishAllData() {
-    return this.taskList.size() == 0;
+    return this.getTaskCount() == 0 && (this.asyncTaskDealer == null || this.asyncTaskDealer.getInFlightCount() == 0)
+        && (this.taskRetryQueue == null || this.taskRetryQueue.isEmpty());
+  }
+
+  /**
+   * 队列中未处理的任务数量
+   */
+  private int getTaskCount() {
+    return this.taskLanes != null ? this.taskLanes.size() : this.taskList.size();
+  }
+
+  public CompletableFuture<Void> whenDealFinishAllData() {
+    return this.drainSignal.whenDrained();
   }
 
   public boolean isSleeping() {
@@ -135,7 +398,9 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
   private int loadScheduleData() {
     try {
       //在每次数据处理完毕后休眠固定的时间
-      if (this.taskTypeInfo.getSleepTimeInterval() > 0) {
+      //继续读取游标中剩余的数据时不休眠
+      if (this.taskTypeInfo.getSleepTimeInterval() > 0 && (this.streamTaskLoader == null || !this.streamTaskLoader.hasRemaining())
+          && !this.fetchBudget.hasOverflow()) {
         //处理完一批数据后，开始休眠
         this.isSleeping = true;
         Thread.sleep(taskTypeInfo.getSleepTimeInterval());
@@ -149,16 +414,37 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
         synchronized (taskItems) {
             tmpTaskList.addAll(taskItems);
         }
-        List<T> tmpList = this.taskDealBean.selectTasks(taskTypeInfo.getTaskParameter(), scheduleManager.getScheduleServer().getOwnSign(), this.scheduleManager.getTaskItemCount(), tmpTaskList, taskTypeInfo.getFetchDataNumber());
-        scheduleManager.getScheduleServer().setLastFetchDataTime(new Timestamp(scheduleManager.scheduleCenter.getSystemTime()));
-        if (tmpList != null) {
+        List<T> tmpList;
+        if (this.fetchBudget.hasOverflow()) {
+          // 先装载超出预算暂存的数据，不再获取新的数据
+          tmpList = this.fetchBudget.nextPage(this.getTaskCount());
+        } else {
+          int fetchDataNumber = this.fetchBudget.limit(this.scheduleManager.fetchSizeController.getFetchDataNumber(), this.getTaskCount());
+          long fetchStartTime = scheduleManager.scheduleCenter.getSystemTime();
+          long fetchStartNanos = System.nanoTime();
+          if (this.streamTaskLoader != null) {
+            tmpList = this.streamTaskLoader.loadTasks(taskItems, fetchDataNumber);
+          } else if (this.parallelTaskFetcher != null) {
+            tmpList = this.parallelTaskFetcher.selectTasks(tmpTaskList, fetchDataNumber);
+          } else {
+            tmpList = this.taskDealBean.selectTasks(taskTypeInfo.getTaskParameter(), scheduleManager.getScheduleServer().getOwnSign(), this.scheduleManager.getTaskItemCount(), tmpTaskList, fetchDataNumber);
+          }
+          long fetchEndTime = scheduleManager.scheduleCenter.getSystemTime();
+          this.statisticsInfo.addFetchTime(System.nanoTime() - fetchStartNanos);
+          this.scheduleManager.fetchSizeController.onFetch(fetchDataNumber, tmpList == null ? 0 : tmpList.size(), fetchStartTime, fetchEndTime);
+          scheduleManager.getScheduleServer().setLastFetchDataTime(new Timestamp(fetchEndTime));
+          tmpList = this.fetchBudget.accept(tmpList, this.getTaskCount());
+        }
+        if (tmpList != null && this.taskLanes != null) {
+          this.taskLanes.addAll(tmpList);
+        } else if (tmpList != null) {
           this.taskList.addAll(tmpList);
         }
       } else {
         log.info("没有获取到需要处理的数据队列");
       }
-      addFetchNum(taskList.size());
-      return this.taskList.size();
+      addFetchNum(this.getTaskCount());
+      return this.getTaskCount();
     } catch (Throwable ex) {
       log.error("获取任务错误：", ex);
     }
@@ -169,9 +455,12 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
   public void run() {
     try {
       long startTime = 0;
+      long lastBusyTime = System.currentTimeMillis();
+      int lane = this.acquireThreadLane();
       while (true) {
         this.m_lockObject.addThread();
         Object executeTask;
+        int failTimes;
         while (true) {
           if (this.isStopSchedule) {//停止队列调度
             this.m_lockObject.releaseThread();
@@ -179,62 +468,114 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
             synchronized (this.threadList) {
               this.threadList.remove(Thread.currentThread());
               if (this.threadList.size() == 0) {
+                if (this.executeTimeoutWatchdog != null) {
+                  this.executeTimeoutWatchdog.shutdown();
+                }
                 this.scheduleManager.unRegisterScheduleServer();
               }
             }
             return;
           }
-          //加载调度任务
-          if (!this.isMultiTask) {
-            executeTask = this.getScheduleTaskId();
+          //优先处理到期的重试任务
+          TaskRetryQueue.RetryTask retryTask = this.taskRetryQueue != null ? this.taskRetryQueue.poll() : null;
+          if (retryTask != null) {
+            executeTask = retryTask.task;
+            failTimes = retryTask.failTimes;
           } else {
-            executeTask = this.getScheduleTaskIdMulti();
+            //加载调度任务
+            if (!this.isMultiTask) {
+              executeTask = this.getScheduleTaskId(lane);
+            } else {
+              executeTask = this.getScheduleTaskIdMulti(lane);
+            }
+            failTimes = 0;
+          }
+          if (executeTask == null && this.taskRetryQueue != null && !this.taskRetryQueue.isEmpty()) {
+            //本批数据处理完之前等待重试的任务到期，避免重新装载数据后重复处理
+            retryTask = this.taskRetryQueue.poll(100);
+            if (retryTask == null) {
+              continue;
+            }
+            executeTask = retryTask.task;
+            failTimes = retryTask.failTimes;
           }
+          this.drainSignal.signal();
           if (executeTask == null) {
             break;
           }
+          lastBusyTime = System.currentTimeMillis();
+          this.addThreadIfNecessary();
+          if (this.asyncTaskDealer != null) {
+            this.asyncTaskDealer.execute(executeTask, this.drainSignal::signal);
+            continue;
+          }
           try {   //运行相关的程序
-            startTime = scheduleManager.scheduleCenter.getSystemTime();
+            startTime = System.nanoTime();
             if (!this.isMultiTask) {
-              if (((IScheduleTaskDealSingle) this.taskDealBean).execute(executeTask, scheduleManager.getScheduleServer().getOwnSign())) {
-                addSuccessNum(1, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+              if (this.execute(executeTask)) {
+                addSuccessNum(1, System.nanoTime() - startTime);
               } else {
-                addFailNum(1, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+                addFailNum(1, System.nanoTime() - startTime);
+                this.retryIfNecessary(executeTask, failTimes + 1);
               }
             } else {
-              if (((IScheduleTaskDealMulti) this.taskDealBean).execute((Object[]) executeTask, scheduleManager.getScheduleServer().getOwnSign())) {
-                addSuccessNum(((Object[]) executeTask).length, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+              if (this.execute(executeTask)) {
+                addSuccessNum(((Object[]) executeTask).length, System.nanoTime() - startTime);
+                this.recycleBatch(executeTask);
               } else {
-                addFailNum(((Object[]) executeTask).length, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+                addFailNum(((Object[]) executeTask).length, System.nanoTime() - startTime);
+                this.retryIfNecessary(executeTask, failTimes + 1);
               }
             }
+          } catch (ExecuteTimeoutWatchdog.AbandonedException ex) {
+            // 处理超时，已经由新的线程代替，当前线程退出
+            return;
           } catch (Throwable ex) {
             if (!this.isMultiTask) {
-              addFailNum(1, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+              addFailNum(1, System.nanoTime() - startTime);
             } else {
-              addFailNum(((Object[]) executeTask).length, scheduleManager.scheduleCenter.getSystemTime() - startTime);
+              addFailNum(((Object[]) executeTask).length, System.nanoTime() - startTime);
             }
             log.error("Task :" + executeTask + " 处理失败", ex);
+            this.retryIfNecessary(executeTask, failTimes + 1);
           }
         }
         //当前队列中所有的任务都已经完成
         log.debug(Thread.currentThread().getName() + "：当前运行线程数量:" + this.m_lockObject.count());
         if (!this.m_lockObject.releaseThreadButNotLast()) {
           int size;
+          if (this.asyncTaskDealer != null) {
+            // 等待异步处理中的任务完成后再装载数据，避免重复处理
+            this.asyncTaskDealer.waitAllTaskFinish();
+          }
           Thread.currentThread().sleep(100);
-          startTime = scheduleManager.scheduleCenter.getSystemTime();
+          startTime = System.nanoTime();
+          long wakeUpGeneration = this.scheduleManager.noDataSleeper.generation();
           // 装载数据
           size = this.loadScheduleData();
           if (size > 0) {
-            this.m_lockObject.notifyOtherThread();
+            this.scheduleManager.noDataSleeper.reset();
+            if (this.taskLanes != null) {
+              // 线程与通道一一对应，需要唤醒所有线程
+              this.m_lockObject.notifyOtherThread();
+            } else {
+              // 只唤醒处理这批数据需要的线程，当前线程也会参与处理
+              int executeNumber = Math.max(taskTypeInfo.getExecuteNumber(), 1);
+              int batchNumber = this.isMultiTask ? (size + executeNumber - 1) / executeNumber : size;
+              this.m_lockObject.notifyOtherThread(batchNumber - 1);
+            }
           } else {
             //判断当没有数据的是否，是否需要退出调度
             if (!this.isStopSchedule && this.scheduleManager.isContinueWhenData()) {
               // 没有加载到数据，开始休眠
               this.isSleeping = true;
-              Thread.currentThread().sleep(this.scheduleManager.getTaskTypeInfo().getSleepTimeNoData());
+              this.scheduleManager.noDataSleeper.sleep(wakeUpGeneration);
               this.isSleeping = false;
               //休眠结束
+              if (this.elasticThreadPolicy != null) {
+                //唤醒等待的线程，空闲超时的线程可以退出
+                this.m_lockObject.notifyOtherThread();
+              }
             } else {
               //没有数据，退出调度，唤醒所有沉睡线程
               this.m_lockObject.notifyOtherThread();
@@ -243,6 +584,10 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
           this.m_lockObject.releaseThread();
         } else {      // 将当前线程放置到等待队列中。直到有线程装载到了新的任务数据
           // 不是最后一个线程，休眠
+          if (this.retireThreadIfIdle(lastBusyTime)) {
+            this.m_lockObject.removeIdleThread();
+            return;
+          }
           this.m_lockObject.waitCurrentThread();
         }
       }
@@ -251,18 +596,43 @@ class AnyScheduleProcessorSleep<T> implements IScheduleProcessor, Runnable {
     }
   }
 
+  /**
+   * 处理失败的任务放入重试队列，超过重试次数时放弃
+   */
+  private void retryIfNecessary(Object executeTask, int failTimes) {
+    if (this.taskRetryQueue != null && !this.isStopSchedule) {
+      this.taskRetryQueue.retry(executeTask, failTimes);
+    }
+  }
+
   private void addFetchNum(long num) {
     this.statisticsInfo.addFetchDataCount(1);
     this.statisticsInfo.addFetchDataNum(num);
   }
 
-  private void addSuccessNum(long num, long spendTime) {
+  /**
+   * @param spendNanos System.nanoTime 计算的处理耗时
+   */
+  private void addSuccessNum(long num, long spendNanos) {
+    long spendTime = TimeUnit.NANOSECONDS.toMillis(spendNanos);
+    if (this.elasticThreadPolicy != null) {
+      this.elasticThreadPolicy.onTaskDone(num, spendTime);
+    }
     this.statisticsInfo.addDealDataSuccess(num);
     this.statisticsInfo.addDealSpendTime(spendTime);
+    this.statisticsInfo.addExecuteTime(spendNanos);
   }
 
-  private void addFailNum(long num, long spendTime) {
+  /**
+   * @param spendNanos System.nanoTime 计算的处理耗时
+   */
+  private void addFailNum(long num, long spendNanos) {
+    long spendTime = TimeUnit.NANOSECONDS.toMillis(spendNanos);
+    if (this.elasticThreadPolicy != null) {
+      this.elasticThreadPolicy.onTaskDone(num, spendTime);
+    }
     this.statisticsInfo.addDealDataFail(num);
     this.statisticsInfo.addDealSpendTime(spendTime);
+    this.statisticsInfo.addExecuteTime(spendNanos);
   }
 }
@@ -0,0 +1,515 @@
+package cn.ictgu.taskmanager;
+
+import cn.ictgu.commen.IScheduleTaskDeal;
+import cn.ictgu.commen.IScheduleTaskDealAsync;
+import cn.ictgu.commen.IScheduleTaskDealMulti;
+import cn.ictgu.commen.IScheduleTaskDealMultiList;
+import cn.ictgu.commen.IScheduleTaskDealSingle;
+import cn.ictgu.commen.IScheduleTaskDealStream;
+import cn.ictgu.commen.TaskItemDefine;
+import lombok.extern.log4j.Log4j;
+
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * VIRTUAL模式
+ * 1、由一个分发线程装载数据，每个任务（或每批任务）在单独的虚拟线程中处理
+ * 2、同时处理的任务数由许可数控制，不再受线程数限制
+ * 3、与SLEEP模式相同，一批数据全部处理完毕后才装载下一批数据
+ * 4、运行在不支持虚拟线程的JDK上时，退化为按需创建的普通线程
+ * 5、SHARED模式同样使用该处理器，任务提交到AnyScheduleManagerFactory持有的共享线程池，线程数只作为同时处理的任务数上限
+ */
+@Log4j
+class AnyScheduleProcessorVirtual<T> implements IScheduleProcessor, Runnable {
+
+  // 任务管理器
+  private AnyScheduleManager scheduleManager;
+
+  // 任务类型
+  private ScheduleTaskType taskTypeInfo;
+
+  // 任务处理的接口类
+  private IScheduleTaskDeal<T> taskDealBean;
+
+  // 任务列表
+  private final TaskQueue<T> taskList;
+
+  // 处理任务的线程池
+  private final ExecutorService executor;
+
+  // 同时处理的任务数许可
+  private final Semaphore permits;
+
+  private final int maxConcurrency;
+
+  // 正在处理的任务数
+  private final AtomicInteger runningCount = new AtomicInteger(0);
+
+  /**
+   * 是否可以批处理
+   */
+  private boolean isMultiTask = false;
+
+  /**
+   * 任务处理类是否以列表方式批处理
+   */
+  private boolean isListTask = false;
+
+  /**
+   * 分发线程的批处理缓冲区，批次在其它线程中处理，不回收重用
+   */
+  private final TaskBatchBuffer batchBuffer = new TaskBatchBuffer();
+
+  /**
+   * 异步任务的提交者，任务处理类不是异步接口时为null
+   */
+  private AsyncTaskDealer asyncTaskDealer;
+
+  /**
+   * 以游标方式装载任务，任务处理类不是游标接口时为null
+   */
+  private StreamTaskLoader<T> streamTaskLoader;
+
+  /**
+   * 按任务项分组并行查询任务，没有开启时为null
+   */
+  private ParallelTaskFetcher<T> parallelTaskFetcher;
+
+  /**
+   * 是否已经获得终止调度信号
+   */
+  private volatile boolean isStopSchedule = false;   // 用户停止队列调度
+  private volatile boolean isSleeping = false;
+
+  /**
+   * 处理失败的任务的重试队列，没有开启时为null
+   */
+  private TaskRetryQueue taskRetryQueue;
+
+  /**
+   * 内存中持有数据量的预算
+   */
+  private final FetchBudget<T> fetchBudget;
+
+  /**
+   * 处理超时的看门狗，没有开启时为null
+   */
+  private ExecuteTimeoutWatchdog executeTimeoutWatchdog;
+
+  /**
+   * 内存中的数据处理完毕的信号
+   */
+  private final DrainSignal drainSignal = new DrainSignal(this::isDealFinishAllData);
+
+  private StatisticsInfo statisticsInfo;
+
+  /**
+   * 创建一个任务调度器
+   * @param anyScheduleManager
+   * @param taskDealBean 任务处理的BEAN
+   * @param statisticsInfo 任务处理信息
+   */
+  AnyScheduleProcessorVirtual(AnyScheduleManager anyScheduleManager, IScheduleTaskDeal<T> taskDealBean, StatisticsInfo statisticsInfo) throws Exception {
+    this.scheduleManager = anyScheduleManager;
+    this.statisticsInfo = statisticsInfo;
+    this.taskTypeInfo = this.scheduleManager.getTaskTypeInfo();
+    this.taskDealBean = taskDealBean;
+    this.taskList = new TaskQueue<>(taskTypeInfo.getFetchDataNumber());
+    this.fetchBudget = new FetchBudget<>(taskTypeInfo, this.statisticsInfo);
+    if (this.taskDealBean instanceof IScheduleTaskDealSingle<?> || this.taskDealBean instanceof IScheduleTaskDealAsync<?>) {
+      if (taskTypeInfo.getExecuteNumber() > 1) {
+        taskTypeInfo.setExecuteNumber(1);
+      }
+      isMultiTask = false;
+      if (this.taskDealBean instanceof IScheduleTaskDealAsync<?>) {
+        this.asyncTaskDealer = new AsyncTaskDealer(this.scheduleManager, (IScheduleTaskDealAsync<?>) this.taskDealBean, this.statisticsInfo);
+      }
+    } else {
+      isMultiTask = true;
+      isListTask = this.taskDealBean instanceof IScheduleTaskDealMultiList<?>;
+    }
+    if (this.taskDealBean instanceof IScheduleTaskDealStream<?>) {
+      this.streamTaskLoader = new StreamTaskLoader<>(this.scheduleManager, (IScheduleTaskDealStream<T>) this.taskDealBean);
+    } else if (taskTypeInfo.getFetchGroupSize() > 0) {
+      this.parallelTaskFetcher = new ParallelTaskFetcher<>(this.scheduleManager, this.taskDealBean);
+    }
+    if (taskTypeInfo.getMaxRetryTimes() > 0) {
+      if (this.asyncTaskDealer != null) {
+        log.warn("异步任务不支持失败重试，忽略重试的设置");
+      } else {
+        this.taskRetryQueue = new TaskRetryQueue(taskTypeInfo, this.statisticsInfo);
+      }
+    }
+    if (taskTypeInfo.isPartitionOrdered()) {
+      log.warn(taskTypeInfo.getProcessorType() + "模式下每个任务由单独的线程处理，不支持按分区键顺序处理，忽略partitionOrdered的设置");
+    }
+    if (taskTypeInfo.getExecuteTimeout() > 0 && this.asyncTaskDealer == null) {
+      this.executeTimeoutWatchdog = new ExecuteTimeoutWatchdog(this.scheduleManager, this.statisticsInfo, this::onExecuteTimeout);
+    }
+    this.maxConcurrency = taskTypeInfo.getMaxConcurrency() > 0 ? taskTypeInfo.getMaxConcurrency() : taskTypeInfo.getThreadNumber();
+    this.permits = new Semaphore(this.maxConcurrency);
+    String threadName = this.scheduleManager.getScheduleServer().getTaskType() + "-" + this.scheduleManager.getCurrentSerialNumber();
+    if ("SHARED".equalsIgnoreCase(taskTypeInfo.getProcessorType())) {
+      this.executor = this.scheduleManager.getSharedTaskExecutor().newQueue(threadName, taskTypeInfo.getSharedWeight());
+    } else {
+      this.executor = newTaskExecutor(threadName + "-exe");
+    }
+    Thread thread = new Thread(this);
+    thread.setName(threadName + "-dispatch");
+    thread.start();
+  }
+
+  /**
+   * 优先使用虚拟线程（JDK 21+），否则使用按需创建的普通线程，线程数由许可数限制
+   */
+  private static ExecutorService newTaskExecutor(String threadName) {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (NoSuchMethodException e) {
+      log.warn("当前JDK不支持虚拟线程，VIRTUAL模式使用普通线程处理任务");
+    } catch (Throwable e) {
+      log.warn("创建虚拟线程池失败，VIRTUAL模式使用普通线程处理任务", e);
+    }
+    AtomicInteger index = new AtomicInteger(0);
+    return Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, threadName + index.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * 需要注意的是，调度服务器从配置中心注销的工作，必须在所有任务处理完毕的情况下才能做
+   */
+  public void stopSchedule() throws Exception {
+    // 设置停止调度的标志,分发线程发现这个标志，等待正在处理的任务完成后，就退出调度
+    this.isStopSchedule = true;
+    // 清除所有未处理任务,但已经进入处理队列的，需要处理完毕
+    this.taskList.clear();
+    if (this.taskRetryQueue != null) {
+      this.taskRetryQueue.clear();
+    }
+    if (this.streamTaskLoader != null) {
+      this.streamTaskLoader.close();
+    }
+    if (this.parallelTaskFetcher != null) {
+      this.parallelTaskFetcher.shutdown();
+    }
+    this.drainSignal.signal();
+  }
+
+  /**
+   * 处理超时的任务被放弃，代替它释放许可
+   * 虚拟线程和按需创建的线程池会为后续任务创建新的线程，共享线程池的线程数固定，需要补充一个处理线程
+   */
+  private void onExecuteTimeout(Thread thread, Object task) {
+    if (this.executor instanceof SharedTaskExecutor.FairQueue) {
+      ((SharedTaskExecutor.FairQueue) this.executor).compensate(thread);
+    }
+    this.runningCount.decrementAndGet();
+    this.permits.release();
+    this.drainSignal.signal();
+  }
+
+  /**
+   * 调用任务处理类处理任务，开启了超时看门狗时记录处理的开始和结束
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private boolean execute(Object executeTask) throws Exception {
+    if (this.executeTimeoutWatchdog != null) {
+      this.executeTimeoutWatchdog.start(executeTask);
+    }
+    try {
+      if (!this.isMultiTask) {
+        return ((IScheduleTaskDealSingle) this.taskDealBean).execute(executeTask, scheduleManager.getScheduleServer().getOwnSign());
+      }
+      if (this.isListTask) {
+        return ((IScheduleTaskDealMultiList) this.taskDealBean).execute(Arrays.asList((Object[]) executeTask), scheduleManager.getScheduleServer().getOwnSign());
+      }
+      return ((IScheduleTaskDealMulti) this.taskDealBean).execute((Object[]) executeTask, scheduleManager.getScheduleServer().getOwnSign());
+    } finally {
+      if (this.executeTimeoutWatchdog != null) {
+        this.executeTimeoutWatchdog.finish();
+      }
+    }
+  }
+
+  private Object getScheduleTaskId() {
+    return this.taskList.poll();   // 按正序处理
+  }
+
+  private Object[] getScheduleTaskIdMulti() {
+    int size = Math.min(this.taskList.size(), taskTypeInfo.getExecuteNumber());
+    if (size <= 0) {
+      return null;
+    }
+    Object[] tasks = this.batchBuffer.getScratch(size);
+    size = this.taskList.drainTo(tasks, size);  // 按正序处理
+    if (size == 0) {
+      return null;
+    }
+    Object[] result = this.batchBuffer.copyOf(size, this.isListTask ? null : tasks[0].getClass());
+    this.statisticsInfo.addBatchSize(size);
+    return result;
+  }
+
+  public void clearAllHasFetchData() {
+    this.taskList.clear();
+    this.fetchBudget.clear();
+    if (this.taskRetryQueue != null) {
+      this.taskRetryQueue.clear();
+    }
+    if (this.streamTaskLoader != null) {
+      this.streamTaskLoader.close();
+    }
+    this.drainSignal.signal();
+  }
+
+  public boolean isDealFinishAllData() {
+    return this.taskList.isEmpty() && this.runningCount.get() == 0
+           && (this.asyncTaskDealer == null || this.asyncTaskDealer.getInFlightCount() == 0)
+           && (this.taskRetryQueue == null || this.taskRetryQueue.isEmpty());
+  }
+
+  public CompletableFuture<Void> whenDealFinishAllData() {
+    return this.drainSignal.whenDrained();
+  }
+
+  public boolean isSleeping() {
+    return this.isSleeping;
+  }
+
+  private int loadScheduleData() {
+    try {
+      //在每次数据处理完毕后休眠固定的时间
+      //继续读取游标中剩余的数据时不休眠
+      if (this.taskTypeInfo.getSleepTimeInterval() > 0 && (this.streamTaskLoader == null || !this.streamTaskLoader.hasRemaining())
+          && !this.fetchBudget.hasOverflow()) {
+        this.isSleeping = true;
+        Thread.sleep(taskTypeInfo.getSleepTimeInterval());
+        this.isSleeping = false;
+      }
+      List<TaskItemDefine> taskItems = this.scheduleManager.getCurrentScheduleTaskItemList();
+      // 根据队列信息查询需要调度的数据，然后增加到任务列表中
+      if (taskItems.size() > 0) {
+        List<TaskItemDefine> tmpTaskList = new ArrayList<>();
+        synchronized (taskItems) {
+          tmpTaskList.addAll(taskItems);
+        }
+        List<T> tmpList;
+        if (this.fetchBudget.hasOverflow()) {
+          // 先装载超出预算暂存的数据，不再获取新的数据
+          tmpList = this.fetchBudget.nextPage(this.taskList.size());
+        } else {
+          int fetchDataNumber = this.fetchBudget.limit(this.scheduleManager.fetchSizeController.getFetchDataNumber(), this.taskList.size());
+          long fetchStartTime = scheduleManager.scheduleCenter.getSystemTime();
+          long fetchStartNanos = System.nanoTime();
+          if (this.streamTaskLoader != null) {
+            tmpList = this.streamTaskLoader.loadTasks(taskItems, fetchDataNumber);
+          } else if (this.parallelTaskFetcher != null) {
+            tmpList = this.parallelTaskFetcher.selectTasks(tmpTaskList, fetchDataNumber);
+          } else {
+            tmpList = this.taskDealBean.selectTasks(taskTypeInfo.getTaskParameter(), scheduleManager.getScheduleServer().getOwnSign(), this.scheduleManager.getTaskItemCount(), tmpTaskList, fetchDataNumber);
+          }
+          long fetchEndTime = scheduleManager.scheduleCenter.getSystemTime();
+          this.statisticsInfo.addFetchTime(System.nanoTime() - fetchStartNanos);
+          this.scheduleManager.fetchSizeController.onFetch(fetchDataNumber, tmpList == null ? 0 : tmpList.size(), fetchStartTime, fetchEndTime);
+          scheduleManager.getScheduleServer().setLastFetchDataTime(new Timestamp(fetchEndTime));
+          tmpList = this.fetchBudget.accept(tmpList, this.taskList.size());
+        }
+        if (tmpList != null) {
+          this.taskList.addAll(tmpList);
+        }
+      } else {
+        log.info("没有获取到需要处理的数据队列");
+      }
+      addFetchNum(taskList.size());
+      return this.taskList.size();
+    } catch (Throwable ex) {
+      log.error("获取任务错误：", ex);
+    }
+    return 0;
+  }
+
+  /**
+   * 等待所有正在处理的任务完成
+   */
+  private void waitAllTaskFinish() {
+    this.permits.acquireUninterruptibly(this.maxConcurrency);
+    this.permits.release(this.maxConcurrency);
+    if (this.asyncTaskDealer != null) {
+      this.asyncTaskDealer.waitAllTaskFinish();
+    }
+  }
+
+  /**
+   * 分发线程
+   */
+  public void run() {
+    try {
+      while (true) {
+        if (this.isStopSchedule) {//停止队列调度
+          this.waitAllTaskFinish();
+          this.executor.shutdown();
+          if (this.executeTimeoutWatchdog != null) {
+            this.executeTimeoutWatchdog.shutdown();
+          }
+          this.scheduleManager.unRegisterScheduleServer();
+          return;
+        }
+        //优先分发到期的重试任务
+        Object executeTask;
+        int failTimes;
+        TaskRetryQueue.RetryTask retryTask = this.taskRetryQueue != null ? this.taskRetryQueue.poll() : null;
+        if (retryTask != null) {
+          executeTask = retryTask.task;
+          failTimes = retryTask.failTimes;
+        } else {
+          //加载调度任务
+          if (!this.isMultiTask) {
+            executeTask = this.getScheduleTaskId();
+          } else {
+            executeTask = this.getScheduleTaskIdMulti();
+          }
+          failTimes = 0;
+        }
+        if (executeTask != null && this.asyncTaskDealer != null) {
+          // 异步任务不需要占用虚拟线程
+          this.asyncTaskDealer.execute(executeTask, this.drainSignal::signal);
+          continue;
+        }
+        if (executeTask != null) {
+          this.permits.acquire();
+          this.runningCount.incrementAndGet();
+          try {
+            this.executor.execute(() -> this.executeTask(executeTask, failTimes));
+          } catch (RejectedExecutionException ex) {
+            this.runningCount.decrementAndGet();
+            this.permits.release();
+            if (this.isStopSchedule) {
+              // 停止调度时线程池可能已经关闭，未处理的任务不再分发，回到循环开始处等待处理中的任务完成并注销
+              continue;
+            }
+            throw ex;
+          } catch (Throwable ex) {
+            this.runningCount.decrementAndGet();
+            this.permits.release();
+            throw ex;
+          }
+          continue;
+        }
+        //当前队列中所有的任务都已经分发，等待处理完毕后再装载数据，避免重复处理
+        this.drainSignal.signal();
+        this.waitAllTaskFinish();
+        if (this.isStopSchedule) {
+          continue;
+        }
+        if (this.taskRetryQueue != null && !this.taskRetryQueue.isEmpty()) {
+          //本批数据处理完之前等待重试的任务到期，避免重新装载数据后重复处理
+          Thread.sleep(10);
+          continue;
+        }
+        Thread.sleep(100);
+        long wakeUpGeneration = this.scheduleManager.noDataSleeper.generation();
+        int size = this.loadScheduleData();
+        if (size <= 0) {
+          //判断当没有数据的是否，是否需要退出调度
+          if (!this.isStopSchedule && this.scheduleManager.isContinueWhenData()) {
+            // 没有加载到数据，开始休眠
+            this.isSleeping = true;
+            this.scheduleManager.noDataSleeper.sleep(wakeUpGeneration);
+            this.isSleeping = false;
+          }
+        } else {
+          this.scheduleManager.noDataSleeper.reset();
+        }
+      }
+    } catch (Throwable e) {
+      log.error(e.getMessage(), e);
+    }
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private void executeTask(Object executeTask, int failTimes) {
+    long startTime = System.nanoTime();
+    boolean abandoned = false;
+    try {   //运行相关的程序
+      if (!this.isMultiTask) {
+        if (this.execute(executeTask)) {
+          addSuccessNum(1, System.nanoTime() - startTime);
+        } else {
+          addFailNum(1, System.nanoTime() - startTime);
+          this.retryIfNecessary(executeTask, failTimes + 1);
+        }
+      } else {
+        if (this.execute(executeTask)) {
+          addSuccessNum(((Object[]) executeTask).length, System.nanoTime() - startTime);
+        } else {
+          addFailNum(((Object[]) executeTask).length, System.nanoTime() - startTime);
+          this.retryIfNecessary(executeTask, failTimes + 1);
+        }
+      }
+    } catch (ExecuteTimeoutWatchdog.AbandonedException ex) {
+      // 处理超时，许可已经由看门狗释放
+      abandoned = true;
+    } catch (Throwable ex) {
+      if (!this.isMultiTask) {
+        addFailNum(1, System.nanoTime() - startTime);
+      } else {
+        addFailNum(((Object[]) executeTask).length, System.nanoTime() - startTime);
+      }
+      log.error("Task :" + executeTask + " 处理失败", ex);
+      this.retryIfNecessary(executeTask, failTimes + 1);
+    } finally {
+      if (!abandoned) {
+        this.runningCount.decrementAndGet();
+        this.permits.release();
+        this.drainSignal.signal();
+      }
+    }
+  }
+
+  /**
+   * 处理失败的任务放入重试队列，超过重试次数时放弃
+   */
+  private void retryIfNecessary(Object executeTask, int failTimes) {
+    if (this.taskRetryQueue != null && !this.isStopSchedule) {
+      this.taskRetryQueue.retry(executeTask, failTimes);
+    }
+  }
+
+  private void addFetchNum(long num) {
+    this.statisticsInfo.addFetchDataCount(1);
+    this.statisticsInfo.addFetchDataNum(num);
+  }
+
+  /**
+   * @param spendNanos System.nanoTime 计算的处理耗时
+   */
+  private void addSuccessNum(long num, long spendNanos) {
+    this.statisticsInfo.addDealDataSuccess(num);
+    this.statisticsInfo.addDealSpendTime(TimeUnit.NANOSECONDS.toMillis(spendNanos));
+    this.statisticsInfo.addExecuteTime(spendNanos);
+  }
+
+  /**
+   * @param spendNanos System.nanoTime 计算的处理耗时
+   */
+  private void addFailNum(long num, long spendNanos) {
+    this.statisticsInfo.addDealDataFail(num);
+    this.statisticsInfo.addDealSpendTime(TimeUnit.NANOSECONDS.toMillis(spendNanos));
+    this.statisticsInfo.addExecuteTime(spendNanos);
+  }
+}
@@ -0,0 +1,92 @@
+package cn.ictgu.taskmanager;
+
+import cn.ictgu.commen.IScheduleTaskDealAsync;
+import lombok.extern.log4j.Log4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步任务的提交者，由各个调度处理器共用
+ * 1、同时在处理中的任务数由许可数控制，达到上限时提交线程等待
+ * 2、任务完成时记录处理成功或失败的统计信息
+ */
+@Log4j
+class AsyncTaskDealer {
+
+  private final AnyScheduleManager scheduleManager;
+
+  private final IScheduleTaskDealAsync<Object> taskDealBean;
+
+  private final StatisticsInfo statisticsInfo;
+
+  private final Semaphore permits;
+
+  private final int maxInFlight;
+
+  @SuppressWarnings("unchecked")
+  AsyncTaskDealer(AnyScheduleManager scheduleManager, IScheduleTaskDealAsync<?> taskDealBean, StatisticsInfo statisticsInfo) {
+    this.scheduleManager = scheduleManager;
+    this.taskDealBean = (IScheduleTaskDealAsync<Object>) taskDealBean;
+    this.statisticsInfo = statisticsInfo;
+    ScheduleTaskType taskTypeInfo = scheduleManager.getTaskTypeInfo();
+    this.maxInFlight = taskTypeInfo.getMaxInFlight() > 0 ? taskTypeInfo.getMaxInFlight() : taskTypeInfo.getFetchDataNumber();
+    this.permits = new Semaphore(this.maxInFlight);
+  }
+
+  /**
+   * 提交一个任务，处理中的任务达到上限时等待
+   * @param task 任务
+   * @param onComplete 任务完成并释放许可后的回调，可以为null
+   */
+  void execute(Object task, Runnable onComplete) throws InterruptedException {
+    this.permits.acquire();
+    long startTime = System.nanoTime();
+    CompletableFuture<Boolean> future;
+    try {
+      future = this.taskDealBean.execute(task, scheduleManager.getScheduleServer().getOwnSign());
+      if (future == null) {
+        future = CompletableFuture.completedFuture(false);
+      }
+    } catch (Throwable ex) {
+      future = new CompletableFuture<>();
+      future.completeExceptionally(ex);
+    }
+    future.whenComplete((result, ex) -> {
+      try {
+        long spendNanos = System.nanoTime() - startTime;
+        if (ex == null && Boolean.TRUE.equals(result)) {
+          this.statisticsInfo.addDealDataSuccess(1);
+        } else {
+          this.statisticsInfo.addDealDataFail(1);
+          if (ex != null) {
+            log.error("Task :" + task + " 处理失败", ex);
+          }
+        }
+        this.statisticsInfo.addDealSpendTime(TimeUnit.NANOSECONDS.toMillis(spendNanos));
+        this.statisticsInfo.addExecuteTime(spendNanos);
+      } finally {
+        this.permits.release();
+        if (onComplete != null) {
+          onComplete.run();
+        }
+      }
+    });
+  }
+
+  /**
+   * 正在处理中的任务数
+   */
+  int getInFlightCount() {
+    return this.maxInFlight - this.permits.availablePermits();
+  }
+
+  /**
+   * 等待所有处理中的任务完成
+   */
+  void waitAllTaskFinish() {
+    this.permits.acquireUninterruptibly(this.maxInFlight);
+    this.permits.release(this.maxInFlight);
+  }
+}
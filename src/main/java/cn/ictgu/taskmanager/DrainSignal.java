@@ -0,0 +1,53 @@
+package cn.ictgu.taskmanager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 内存中的数据处理完毕的信号，重新装载任务项时代替轮询isDealFinishAllData
+ * 1、whenDrained返回一个在数据处理完毕时完成的future
+ * 2、处理器在取出任务、任务处理结束、清除数据时调用signal，没有等待者时只有一次volatile读
+ */
+class DrainSignal {
+
+  private final BooleanSupplier isDrained;
+
+  // 等待中的future，没有等待者时为null
+  private volatile CompletableFuture<Void> drainFuture;
+
+  DrainSignal(BooleanSupplier isDrained) {
+    this.isDrained = isDrained;
+  }
+
+  /**
+   * 内存中的数据处理完毕时完成的future，调用时已经处理完毕则直接完成
+   */
+  CompletableFuture<Void> whenDrained() {
+    CompletableFuture<Void> future;
+    synchronized (this) {
+      future = this.drainFuture;
+      if (future == null) {
+        future = new CompletableFuture<>();
+        this.drainFuture = future;
+      }
+    }
+    this.signal();
+    return future;
+  }
+
+  /**
+   * 内存中的数据发生变化，如果已经处理完毕则通知等待者
+   */
+  void signal() {
+    CompletableFuture<Void> future = this.drainFuture;
+    if (future == null || !this.isDrained.getAsBoolean()) {
+      return;
+    }
+    synchronized (this) {
+      if (this.drainFuture == future) {
+        this.drainFuture = null;
+      }
+    }
+    future.complete(null);
+  }
+}
@@ -0,0 +1,84 @@
+package cn.ictgu.taskmanager;
+
+/**
+ * 弹性线程数的策略，配置了maxThreads时开启
+ * 1、队列中积压的任务按平均处理耗时估算，当前线程处理完需要的时间超过1秒时，增加一个线程，两次增加至少间隔200毫秒
+ * 2、线程连续空闲超过threadKeepAliveTime时退出，线程数不少于minThreads
+ */
+class ElasticThreadPolicy {
+
+  // 积压的任务需要处理的时间超过该值时增加线程，毫秒
+  private static final long GROW_DRAIN_TIME = 1000;
+
+  // 两次增加线程的最小间隔，毫秒
+  private static final long GROW_INTERVAL = 200;
+
+  private final int minThreads;
+
+  private final int maxThreads;
+
+  private final long keepAliveTime;
+
+  // 单个任务平均处理耗时，毫秒，指数加权平均
+  private volatile double avgDealTime = -1;
+
+  private volatile long lastGrowTime = 0;
+
+  ElasticThreadPolicy(ScheduleTaskType taskTypeInfo) {
+    this.maxThreads = Math.max(taskTypeInfo.getMaxThreads(), 1);
+    this.minThreads = Math.min(Math.max(taskTypeInfo.getMinThreads(), 1), this.maxThreads);
+    this.keepAliveTime = taskTypeInfo.getThreadKeepAliveTime();
+  }
+
+  /**
+   * 初始线程数，threadNumber限制在[minThreads, maxThreads]之间
+   */
+  int getInitialThreadNumber(int threadNumber) {
+    return Math.max(this.minThreads, Math.min(this.maxThreads, threadNumber));
+  }
+
+  int getMinThreads() {
+    return this.minThreads;
+  }
+
+  /**
+   * 记录任务处理耗时
+   * @param num 处理的任务数
+   * @param spendTime 处理耗时，毫秒
+   */
+  void onTaskDone(long num, long spendTime) {
+    if (num <= 0) {
+      return;
+    }
+    double dealTime = (double) spendTime / num;
+    double tmpAvg = this.avgDealTime;
+    this.avgDealTime = tmpAvg < 0 ? dealTime : tmpAvg * 0.9 + dealTime * 0.1;
+  }
+
+  /**
+   * 根据积压的任务数和平均处理耗时，判断是否需要增加线程，返回true时已经记录了本次增加的时间
+   * @param backlog 队列中积压的任务数
+   * @param threadNumber 当前线程数
+   */
+  boolean isNeedMoreThread(int backlog, int threadNumber) {
+    if (threadNumber >= this.maxThreads || backlog < threadNumber || this.avgDealTime < 0) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    if (now - this.lastGrowTime < GROW_INTERVAL) {
+      return false;
+    }
+    if (backlog * this.avgDealTime / threadNumber <= GROW_DRAIN_TIME) {
+      return false;
+    }
+    this.lastGrowTime = now;
+    return true;
+  }
+
+  /**
+   * 线程从lastBusyTime开始一直空闲，是否已经超过了保持时间
+   */
+  boolean isIdleTooLong(long lastBusyTime) {
+    return System.currentTimeMillis() - lastBusyTime > this.keepAliveTime;
+  }
+}
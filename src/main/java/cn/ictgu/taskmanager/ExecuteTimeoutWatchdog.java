@@ -0,0 +1,131 @@
+package cn.ictgu.taskmanager;
+
+import lombok.extern.log4j.Log4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务处理超时的看门狗，配置了executeTimeout时开启
+ * 1、处理线程在execute前后调用start和finish，看门狗定时检查处理时间超过executeTimeout的线程
+ * 2、超时的线程被中断并放弃，由调度处理器移出处理中的任务、补充新的处理线程
+ * 3、被放弃的线程从execute返回时，finish抛出AbandonedException，线程直接退出，不再统计结果
+ * 4、中断在任务仍然登记时进行，与finish互斥，finish清除中断标志，不会中断线程池中同一线程随后处理的其它任务
+ */
+@Log4j
+class ExecuteTimeoutWatchdog {
+
+  /**
+   * 处理超时后的回调，在看门狗线程中执行
+   */
+  interface TimeoutHandler {
+    void onTimeout(Thread thread, Object task) throws Exception;
+  }
+
+  /**
+   * 当前线程处理的任务已经超时被放弃
+   */
+  static class AbandonedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    AbandonedException() {
+      super("任务处理超时，已经被放弃");
+    }
+  }
+
+  private final Map<Thread, Execution> executions = new ConcurrentHashMap<>();
+
+  private final long executeTimeout;
+
+  private final StatisticsInfo statisticsInfo;
+
+  private final TimeoutHandler timeoutHandler;
+
+  private final ScheduledExecutorService checkExecutor;
+
+  ExecuteTimeoutWatchdog(AnyScheduleManager scheduleManager, StatisticsInfo statisticsInfo, TimeoutHandler timeoutHandler) {
+    this.executeTimeout = scheduleManager.getTaskTypeInfo().getExecuteTimeout();
+    this.statisticsInfo = statisticsInfo;
+    this.timeoutHandler = timeoutHandler;
+    String threadName = scheduleManager.getScheduleServer().getTaskType() + "-" + scheduleManager.getCurrentSerialNumber() + "-watchdog";
+    this.checkExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, threadName);
+      thread.setDaemon(true);
+      return thread;
+    });
+    long checkInterval = Math.min(Math.max(this.executeTimeout / 4, 10), 1000);
+    this.checkExecutor.scheduleWithFixedDelay(this::check, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 当前线程开始处理任务
+   */
+  void start(Object task) {
+    this.executions.put(Thread.currentThread(), new Execution(task, System.currentTimeMillis()));
+  }
+
+  /**
+   * 当前线程处理任务结束，任务已经超时被放弃时抛出AbandonedException
+   */
+  void finish() {
+    Execution execution = this.executions.remove(Thread.currentThread());
+    if (execution != null) {
+      synchronized (execution) {
+        if (!execution.isAbandoned) {
+          execution.isFinished = true;
+          return;
+        }
+      }
+    }
+    // 看门狗已经中断了当前线程，清除中断标志
+    Thread.interrupted();
+    throw new AbandonedException();
+  }
+
+  void shutdown() {
+    this.checkExecutor.shutdownNow();
+  }
+
+  private void check() {
+    long now = System.currentTimeMillis();
+    for (Map.Entry<Thread, Execution> entry : this.executions.entrySet()) {
+      Execution execution = entry.getValue();
+      if (now - execution.startTime <= this.executeTimeout) {
+        continue;
+      }
+      Thread thread = entry.getKey();
+      // 与finish互斥，任务仍然在处理时才放弃，中断完成后finish才能返回
+      synchronized (execution) {
+        if (execution.isFinished || execution.isAbandoned) {
+          continue;
+        }
+        execution.isAbandoned = true;
+        thread.interrupt();
+      }
+      this.executions.remove(thread, execution);
+      this.statisticsInfo.addExecuteTimeoutNum(1);
+      log.warn(thread.getName() + "：任务处理超过" + this.executeTimeout + "毫秒，放弃该线程。Task :" + execution.task);
+      try {
+        this.timeoutHandler.onTimeout(thread, execution.task);
+      } catch (Throwable e) {
+        log.error("处理超时任务失败：", e);
+      }
+    }
+  }
+
+  private static class Execution {
+    final Object task;
+    final long startTime;
+    // 以下状态由Execution自身的锁保护
+    boolean isFinished = false;
+    boolean isAbandoned = false;
+
+    Execution(Object task, long startTime) {
+      this.task = task;
+      this.startTime = startTime;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package cn.ictgu.taskmanager;
+
+import lombok.extern.log4j.Log4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 内存中持有数据量的预算，配置了maxHoldDataNumber时开启，每个调度处理器一个
+ * 1、每次获取数据的数量不超过预算减去队列中还未处理的数量
+ * 2、selectTasks返回的数据超过预算时，超出的部分暂存起来分页装载，不一次性放入队列
+ * 3、任务项重新分配时暂存的数据和队列中的数据一起丢弃
+ */
+@Log4j
+class FetchBudget<T> {
+
+  private final int maxHoldDataNumber;
+
+  private final StatisticsInfo statisticsInfo;
+
+  // 超出预算暂存的数据，从overflowIndex开始还没有装载
+  private List<T> overflowTasks;
+
+  private int overflowIndex;
+
+  FetchBudget(ScheduleTaskType taskTypeInfo, StatisticsInfo statisticsInfo) {
+    this.maxHoldDataNumber = taskTypeInfo.getMaxHoldDataNumber();
+    this.statisticsInfo = statisticsInfo;
+  }
+
+  /**
+   * 本次可以获取的数据量
+   * @param fetchDataNumber 每次获取数据的数量
+   * @param holdNumber 队列中还未处理的数据量
+   */
+  synchronized int limit(int fetchDataNumber, int holdNumber) {
+    if (this.maxHoldDataNumber <= 0) {
+      return fetchDataNumber;
+    }
+    return Math.max(Math.min(fetchDataNumber, this.maxHoldDataNumber - holdNumber - this.getOverflowCount()), 0);
+  }
+
+  /**
+   * 是否有超出预算暂存的数据，有时应该先装载暂存的数据，不再获取新的数据
+   */
+  synchronized boolean hasOverflow() {
+    return this.getOverflowCount() > 0;
+  }
+
+  /**
+   * 检查获取到的数据，返回预算内可以放入队列的部分，其余部分暂存
+   * @param tasks selectTasks返回的数据
+   * @param holdNumber 队列中还未处理的数据量
+   */
+  synchronized List<T> accept(List<T> tasks, int holdNumber) {
+    if (this.maxHoldDataNumber <= 0) {
+      return tasks;
+    }
+    if (tasks != null) {
+      int room = Math.max(this.maxHoldDataNumber - holdNumber, 0);
+      if (tasks.size() > room) {
+        log.warn("获取的数据量" + tasks.size() + "超过预算，超出的" + (tasks.size() - room) + "条分页装载");
+        this.statisticsInfo.addPagedDataNum(tasks.size() - room);
+        this.overflowTasks = tasks;
+        this.overflowIndex = room;
+        tasks = new ArrayList<>(tasks.subList(0, room));
+      }
+    }
+    this.statisticsInfo.setHoldDataNumber(holdNumber + (tasks == null ? 0 : tasks.size()) + this.getOverflowCount(), this.maxHoldDataNumber);
+    return tasks;
+  }
+
+  /**
+   * 从暂存的数据中取出预算内的一页
+   * @param holdNumber 队列中还未处理的数据量
+   */
+  synchronized List<T> nextPage(int holdNumber) {
+    int size = Math.min(Math.max(this.maxHoldDataNumber - holdNumber, 0), this.getOverflowCount());
+    List<T> result = new ArrayList<>(this.overflowTasks.subList(this.overflowIndex, this.overflowIndex + size));
+    this.overflowIndex = this.overflowIndex + size;
+    if (this.getOverflowCount() == 0) {
+      this.overflowTasks = null;
+    }
+    this.statisticsInfo.setHoldDataNumber(holdNumber + result.size() + this.getOverflowCount(), this.maxHoldDataNumber);
+    return result;
+  }
+
+  /**
+   * 丢弃暂存的数据
+   */
+  synchronized void clear() {
+    this.overflowTasks = null;
+    this.overflowIndex = 0;
+  }
+
+  private int getOverflowCount() {
+    return this.overflowTasks == null ? 0 : this.overflowTasks.size() - this.overflowIndex;
+  }
+}
@@ -0,0 +1,91 @@
+package cn.ictgu.taskmanager;
+
+/**
+ * 每次获取数据数量的自适应控制器，每个任务管理器一个
+ * 1、配置了maxFetchDataNumber时开启，每次获取数据的数量在[minFetchDataNumber, maxFetchDataNumber]之间调整
+ * 2、根据两次获取数据之间的处理速度和获取数据的耗时，计算使处理线程等待数据的时间占比不超过10%所需的数量
+ * 3、每次调整幅度不超过一倍，取到的数据少于请求数量时说明数据已经取完，不再增大
+ */
+class FetchSizeController {
+
+  // 期望的处理线程等待数据的时间占比
+  private static final double TARGET_WAIT_RATIO = 0.1;
+
+  private final boolean isAdaptive;
+
+  private final int minFetchDataNumber;
+
+  private final int maxFetchDataNumber;
+
+  private final StatisticsInfo statisticsInfo;
+
+  private volatile int fetchDataNumber;
+
+  // 最近一次等待数据的时间占比，百分比
+  private volatile int waitPercent = 0;
+
+  // 最近一次获取数据结束的时间
+  private long lastFetchEndTime = 0;
+
+  // 最近一次获取数据结束时已处理的数据量
+  private long lastDealDataCount = 0;
+
+  FetchSizeController(ScheduleTaskType taskTypeInfo, StatisticsInfo statisticsInfo) {
+    this.statisticsInfo = statisticsInfo;
+    this.isAdaptive = taskTypeInfo.getMaxFetchDataNumber() > 0;
+    this.maxFetchDataNumber = Math.max(taskTypeInfo.getMaxFetchDataNumber(), 1);
+    this.minFetchDataNumber = Math.min(Math.max(taskTypeInfo.getMinFetchDataNumber(), 1), this.maxFetchDataNumber);
+    this.fetchDataNumber = this.isAdaptive ? this.clamp(taskTypeInfo.getFetchDataNumber()) : taskTypeInfo.getFetchDataNumber();
+  }
+
+  /**
+   * 当前每次获取数据的数量
+   */
+  int getFetchDataNumber() {
+    return this.fetchDataNumber;
+  }
+
+  /**
+   * 每次获取数据后调用，调整下一次获取数据的数量
+   * @param requestNum 请求的数量
+   * @param fetchNum 实际取到的数量
+   * @param fetchStartTime 获取数据开始的时间
+   * @param fetchEndTime 获取数据结束的时间
+   */
+  synchronized void onFetch(int requestNum, int fetchNum, long fetchStartTime, long fetchEndTime) {
+    if (!this.isAdaptive) {
+      return;
+    }
+    long dealDataCount = this.statisticsInfo.getDealDataCount();
+    long cycleTime = fetchEndTime - this.lastFetchEndTime;
+    long fetchTime = Math.max(fetchEndTime - fetchStartTime, 1);
+    long dealNum = dealDataCount - this.lastDealDataCount;
+    boolean isFirstFetch = this.lastFetchEndTime == 0;
+    this.lastFetchEndTime = fetchEndTime;
+    this.lastDealDataCount = dealDataCount;
+    if (isFirstFetch || cycleTime <= 0 || dealNum <= 0) {
+      return;
+    }
+    this.waitPercent = (int) Math.min(fetchTime * 100 / cycleTime, 100);
+    // 每毫秒处理的数据量
+    double dealRate = (double) dealNum / Math.max(cycleTime - fetchTime, 1);
+    int target = (int) Math.min(dealRate * fetchTime * (1 - TARGET_WAIT_RATIO) / TARGET_WAIT_RATIO, Integer.MAX_VALUE);
+    int current = this.fetchDataNumber;
+    if (target > current && fetchNum < requestNum) {
+      return;
+    }
+    target = Math.max(Math.min(target, current * 2), current / 2);
+    this.fetchDataNumber = this.clamp(target);
+  }
+
+  /**
+   * 当前状态的描述，显示在调度服务器的处理信息中
+   */
+  String getDescription() {
+    return "fetch=" + this.fetchDataNumber + (this.isAdaptive ? "(wait " + this.waitPercent + "%)" : "");
+  }
+
+  private int clamp(int value) {
+    return Math.max(this.minFetchDataNumber, Math.min(this.maxFetchDataNumber, value));
+  }
+}
@@ -241,5 +241,12 @@ public interface IScheduleDataManager {
    */
   int queryTaskItemCount(String taskType) throws Exception;
 
+  /**
+   * 把旧格式（每个任务项6个节点）的任务项迁移为单节点紧凑格式
+   * @param force 还有旧版本的调度服务器注册时也强制迁移
+   * @return 迁移的任务项数量
+   */
+  int migrateTaskItemLayout(boolean force) throws Exception;
+
 
 }
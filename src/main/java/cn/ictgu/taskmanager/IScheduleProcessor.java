@@ -1,5 +1,7 @@
 package cn.ictgu.taskmanager;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 任务调度器
  * Created by Silence on 2016/12/20.
@@ -11,6 +13,11 @@ interface IScheduleProcessor {
    */
   boolean isDealFinishAllData();
 
+  /**
+   * 内存中所有的数据处理完毕时完成的future，最后一个处理中的任务结束时立即完成
+   */
+  CompletableFuture<Void> whenDealFinishAllData();
+
   /**
    * 判断进程是否处于休眠状态
    */
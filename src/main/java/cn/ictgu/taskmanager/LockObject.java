@@ -4,25 +4,61 @@ import lombok.extern.log4j.Log4j;
 
 /**
  * 自定义的锁
+ * 1、处理完任务的线程先通过releaseThreadButNotLast登记为空闲，再调用waitCurrentThread休眠
+ * 2、唤醒时先记录可以唤醒的线程数，线程在登记空闲之后、开始休眠之前发出的唤醒不会丢失
+ * 3、可以只唤醒需要的线程数，避免每次装载数据都唤醒所有线程
+ *    装载数据的线程本身不休眠并参与处理，只需要唤醒批次数-1个线程；没有被唤醒的线程保持空闲，不影响本批数据处理完毕，
+ *    下次装载需要时再唤醒，停止调度时通过notifyOtherThread()全部唤醒
  * Created by Silence on 2016/12/20.
  */
 @Log4j
 class LockObject {
 
+  // 正在处理任务的线程数
   private int m_threadCount = 0;
-  private final Object m_waitOnObject = new Object();
+
+  // 已经登记空闲、等待唤醒的线程数
+  private int m_idleCount = 0;
+
+  // 已经发出、还没有被领取的唤醒数，不超过空闲的线程数
+  private int m_wakeUpCount = 0;
 
   void waitCurrentThread() throws Exception {
-    synchronized (m_waitOnObject) {
+    synchronized (this) {
       log.debug(Thread.currentThread().getName() + "：休眠当前线程");
-      this.m_waitOnObject.wait();
+      while (this.m_wakeUpCount == 0) {
+        this.wait();
+      }
+      this.m_wakeUpCount = this.m_wakeUpCount - 1;
+      this.m_idleCount = this.m_idleCount - 1;
     }
   }
 
+  /**
+   * 唤醒所有空闲的线程
+   */
   void notifyOtherThread() throws Exception {
-    synchronized (m_waitOnObject) {
+    synchronized (this) {
       log.debug(Thread.currentThread().getName() + "：唤醒所有等待线程");
-      this.m_waitOnObject.notifyAll();
+      this.m_wakeUpCount = this.m_idleCount;
+      this.notifyAll();
+    }
+  }
+
+  /**
+   * 最多唤醒threadNumber个空闲的线程
+   */
+  void notifyOtherThread(int threadNumber) throws Exception {
+    synchronized (this) {
+      int wakeUpNumber = Math.min(this.m_wakeUpCount + threadNumber, this.m_idleCount) - this.m_wakeUpCount;
+      if (wakeUpNumber <= 0) {
+        return;
+      }
+      log.debug(Thread.currentThread().getName() + "：唤醒" + wakeUpNumber + "个等待线程");
+      this.m_wakeUpCount = this.m_wakeUpCount + wakeUpNumber;
+      for (int i = 0; i < wakeUpNumber; i++) {
+        this.notify();
+      }
     }
   }
 
@@ -39,7 +75,7 @@ class LockObject {
   }
 
   /**
-   * 降低线程数量，如果是最后一个线程，则不能休眠
+   * 降低线程数量，如果是最后一个线程，则不能休眠。否则当前线程登记为空闲，随后需要调用waitCurrentThread或者removeIdleThread
    */
   boolean releaseThreadButNotLast() {
     synchronized (this) {
@@ -47,11 +83,24 @@ class LockObject {
         return false;
       } else {
         m_threadCount = m_threadCount - 1;
+        m_idleCount = m_idleCount + 1;
         return true;
       }
     }
   }
 
+  /**
+   * 登记为空闲的线程不再休眠，直接退出
+   */
+  void removeIdleThread() {
+    synchronized (this) {
+      this.m_idleCount = this.m_idleCount - 1;
+      if (this.m_wakeUpCount > this.m_idleCount) {
+        this.m_wakeUpCount = this.m_idleCount;
+      }
+    }
+  }
+
   int count() {
     synchronized (this) {
       return m_threadCount;
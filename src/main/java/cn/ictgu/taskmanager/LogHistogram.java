@@ -0,0 +1,90 @@
+package cn.ictgu.taskmanager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数分组的直方图，用于统计耗时、批处理数量等非负整数的分布
+ * 1、每个2的幂次区间再平均分成 SUB_BUCKETS 组，分位数的相对误差不超过 1/SUB_BUCKETS
+ * 2、分组数量固定，记录时只做一次原子自增，不加锁、不分配内存
+ * 3、读取时不做同步，并发记录时得到的分位数可能存在一定的误差
+ */
+class LogHistogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong max = new AtomicLong(0);
+
+  /**
+   * 记录一个值，负数按0处理
+   */
+  void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    this.counts.incrementAndGet(indexOf(value));
+    long current = this.max.get();
+    while (value > current && !this.max.compareAndSet(current, value)) {
+      current = this.max.get();
+    }
+  }
+
+  long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count = count + this.counts.get(i);
+    }
+    return count;
+  }
+
+  long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * 分位数对应的值，返回所在分组的上限，不会超过记录过的最大值
+   * @param percentile 0到100之间的百分位
+   */
+  long getValueAtPercentile(double percentile) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = this.counts.get(i);
+      total = total + snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(total * Math.min(percentile, 100) / 100), 1);
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count = count + snapshot[i];
+      if (count >= rank) {
+        return Math.min(upperBoundOf(i), this.max.get());
+      }
+    }
+    return this.max.get();
+  }
+
+  private static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  private static long upperBoundOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long sub = index % SUB_BUCKETS;
+    long lower = (SUB_BUCKETS + sub) << shift;
+    return lower + (1L << shift) - 1;
+  }
+}
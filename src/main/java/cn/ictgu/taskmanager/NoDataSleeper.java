@@ -0,0 +1,91 @@
+package cn.ictgu.taskmanager;
+
+/**
+ * 没有取到数据时的休眠，每个任务管理器一个
+ * 1、休眠可以被wakeUp提前唤醒，唤醒后立即重新获取数据
+ *    获取数据前先记录唤醒的次数，获取数据期间发生的唤醒不会丢失
+ * 2、配置了minSleepTimeNoData时，连续取不到数据的休眠时间从minSleepTimeNoData开始加倍，直到sleepTimeNoData，取到数据后恢复
+ */
+class NoDataSleeper {
+
+  private final ScheduleTaskType taskTypeInfo;
+
+  private final Object lockObject = new Object();
+
+  // 唤醒的次数，休眠期间发生变化时结束休眠
+  private long wakeUpCount = 0;
+
+  // 连续没有取到数据的次数
+  private int noDataCount = 0;
+
+  NoDataSleeper(ScheduleTaskType taskTypeInfo) {
+    this.taskTypeInfo = taskTypeInfo;
+  }
+
+  /**
+   * 当前唤醒的次数，获取数据前调用，作为sleep的参数
+   */
+  long generation() {
+    synchronized (this.lockObject) {
+      return this.wakeUpCount;
+    }
+  }
+
+  /**
+   * 没有取到数据时休眠，被唤醒时提前返回
+   * @param startWakeUpCount 获取数据前调用generation得到的唤醒次数，之后已经被唤醒时不再休眠
+   */
+  void sleep(long startWakeUpCount) throws InterruptedException {
+    this.sleep(startWakeUpCount, Long.MAX_VALUE);
+  }
+
+  /**
+   * 没有取到数据时休眠，最多休眠maxSleepTime毫秒，被唤醒时提前返回
+   * @param startWakeUpCount 获取数据前调用generation得到的唤醒次数，之后已经被唤醒时不再休眠
+   * @param maxSleepTime 本次休眠时间的上限，例如下一个重试任务到期的时间
+   */
+  void sleep(long startWakeUpCount, long maxSleepTime) throws InterruptedException {
+    synchronized (this.lockObject) {
+      long sleepTime = Math.min(this.getSleepTime(), maxSleepTime);
+      this.noDataCount = this.noDataCount + 1;
+      long endTime = System.currentTimeMillis() + sleepTime;
+      long remainTime = sleepTime;
+      while (remainTime > 0 && startWakeUpCount == this.wakeUpCount) {
+        this.lockObject.wait(remainTime);
+        remainTime = endTime - System.currentTimeMillis();
+      }
+    }
+  }
+
+  /**
+   * 取到了数据，休眠时间恢复到最小值
+   */
+  void reset() {
+    synchronized (this.lockObject) {
+      this.noDataCount = 0;
+    }
+  }
+
+  /**
+   * 唤醒正在休眠的处理器，休眠时间恢复到最小值
+   */
+  void wakeUp() {
+    synchronized (this.lockObject) {
+      this.wakeUpCount = this.wakeUpCount + 1;
+      this.noDataCount = 0;
+      this.lockObject.notifyAll();
+    }
+  }
+
+  private long getSleepTime() {
+    long maxSleepTime = this.taskTypeInfo.getSleepTimeNoData();
+    long sleepTime = this.taskTypeInfo.getMinSleepTimeNoData();
+    if (sleepTime <= 0 || sleepTime >= maxSleepTime) {
+      return maxSleepTime;
+    }
+    for (int i = 0; i < this.noDataCount && sleepTime < maxSleepTime; i++) {
+      sleepTime = sleepTime * 2;
+    }
+    return Math.min(sleepTime, maxSleepTime);
+  }
+}
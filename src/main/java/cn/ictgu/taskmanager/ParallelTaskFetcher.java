@@ -0,0 +1,80 @@
+package cn.ictgu.taskmanager;
+
+import cn.ictgu.commen.IScheduleTaskDeal;
+import cn.ictgu.commen.TaskItemDefine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按任务项分组并行查询任务，由各个调度处理器共用
+ * 1、每fetchGroupSize个任务项调用一次selectTasks，在固定大小的线程池中并行执行
+ * 2、每组获取的数量为每次获取数据的数量按组数平分，合并后的总量与串行查询时相同
+ * 3、任何一组查询失败，本次查询失败
+ */
+class ParallelTaskFetcher<T> {
+
+  private final AnyScheduleManager scheduleManager;
+
+  private final IScheduleTaskDeal<T> taskDealBean;
+
+  private final ExecutorService fetchExecutor;
+
+  ParallelTaskFetcher(AnyScheduleManager scheduleManager, IScheduleTaskDeal<T> taskDealBean) {
+    this.scheduleManager = scheduleManager;
+    this.taskDealBean = taskDealBean;
+    ScheduleTaskType taskTypeInfo = scheduleManager.getTaskTypeInfo();
+    int threadNumber = taskTypeInfo.getFetchThreadNumber() > 0 ? taskTypeInfo.getFetchThreadNumber() : taskTypeInfo.getThreadNumber();
+    String threadName = scheduleManager.getScheduleServer().getTaskType() + "-" + scheduleManager.getCurrentSerialNumber() + "-fetch";
+    AtomicInteger index = new AtomicInteger(0);
+    this.fetchExecutor = Executors.newFixedThreadPool(threadNumber, r -> {
+      Thread thread = new Thread(r, threadName + index.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * 分组并行查询任务，并合并查询结果
+   * @param taskItems 当前调度服务器分配到的任务项
+   * @param fetchDataNumber 每次获取数据的数量
+   */
+  List<T> selectTasks(List<TaskItemDefine> taskItems, int fetchDataNumber) throws Exception {
+    ScheduleTaskType taskTypeInfo = this.scheduleManager.getTaskTypeInfo();
+    int groupSize = Math.max(taskTypeInfo.getFetchGroupSize(), 1);
+    int groupNumber = (taskItems.size() + groupSize - 1) / groupSize;
+    int eachFetchDataNum = Math.max((fetchDataNumber + groupNumber - 1) / groupNumber, 1);
+    String ownSign = this.scheduleManager.getScheduleServer().getOwnSign();
+    int taskItemCount = this.scheduleManager.getTaskItemCount();
+    List<Callable<List<T>>> fetchList = new ArrayList<>();
+    for (int i = 0; i < taskItems.size(); i = i + groupSize) {
+      List<TaskItemDefine> groupItems = new ArrayList<>(taskItems.subList(i, Math.min(i + groupSize, taskItems.size())));
+      fetchList.add(() -> this.taskDealBean.selectTasks(taskTypeInfo.getTaskParameter(), ownSign, taskItemCount, groupItems, eachFetchDataNum));
+    }
+    List<T> result = new ArrayList<>();
+    for (Future<List<T>> future : this.fetchExecutor.invokeAll(fetchList)) {
+      try {
+        List<T> tmpList = future.get();
+        if (tmpList != null) {
+          result.addAll(tmpList);
+        }
+      } catch (ExecutionException ex) {
+        if (ex.getCause() instanceof Exception) {
+          throw (Exception) ex.getCause();
+        }
+        throw ex;
+      }
+    }
+    return result;
+  }
+
+  void shutdown() {
+    this.fetchExecutor.shutdownNow();
+  }
+}
@@ -0,0 +1,100 @@
+package cn.ictgu.taskmanager;
+
+import cn.ictgu.commen.IScheduleTaskDeal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按分区键分道的任务队列，每个处理线程只从自己的通道中获取任务
+ * 1、分区键相同的任务进入同一个通道，按装载的顺序串行处理，不同通道之间并行处理
+ * 2、分区键为null的任务轮流放入各个通道，不保证顺序
+ * 3、入队同一时刻只能由一个线程调用，即装载数据的线程
+ */
+class PartitionTaskLanes<T> {
+
+  private final IScheduleTaskDeal<T> taskDealBean;
+
+  private final List<TaskQueue<T>> lanes = new ArrayList<>();
+
+  // 分区键为null的任务下一个放入的通道
+  private int nextLane = 0;
+
+  PartitionTaskLanes(IScheduleTaskDeal<T> taskDealBean, int laneNumber, int initialCapacity) {
+    this.taskDealBean = taskDealBean;
+    for (int i = 0; i < laneNumber; i++) {
+      this.lanes.add(new TaskQueue<>(initialCapacity / laneNumber));
+    }
+  }
+
+  int getLaneNumber() {
+    return this.lanes.size();
+  }
+
+  /**
+   * 按分区键把任务放入对应的通道，返回实际放入的数量
+   */
+  int addAll(List<? extends T> tasks) {
+    List<List<T>> laneTasks = new ArrayList<>();
+    for (int i = 0; i < this.lanes.size(); i++) {
+      laneTasks.add(new ArrayList<>());
+    }
+    for (T task : tasks) {
+      laneTasks.get(this.laneOf(task)).add(task);
+    }
+    int count = 0;
+    for (int i = 0; i < this.lanes.size(); i++) {
+      count = count + this.lanes.get(i).addAll(laneTasks.get(i));
+    }
+    return count;
+  }
+
+  T poll(int lane) {
+    return this.lanes.get(lane).poll();
+  }
+
+  int drainTo(int lane, Object[] target, int maxElements) {
+    return this.lanes.get(lane).drainTo(target, maxElements);
+  }
+
+  int size(int lane) {
+    return this.lanes.get(lane).size();
+  }
+
+  int size() {
+    int size = 0;
+    for (TaskQueue<T> lane : this.lanes) {
+      size = size + lane.size();
+    }
+    return size;
+  }
+
+  boolean isEmpty() {
+    return this.size() == 0;
+  }
+
+  void clear() {
+    for (TaskQueue<T> lane : this.lanes) {
+      lane.clear();
+    }
+  }
+
+  List<T> toList() {
+    List<T> result = new ArrayList<>();
+    for (TaskQueue<T> lane : this.lanes) {
+      result.addAll(lane.toList());
+    }
+    return result;
+  }
+
+  private int laneOf(T task) {
+    Object partitionKey = this.taskDealBean.getPartitionKey(task);
+    if (partitionKey == null) {
+      this.nextLane = (this.nextLane + 1) % this.lanes.size();
+      return this.nextLane;
+    }
+    int hash = partitionKey.hashCode();
+    hash = hash ^ (hash >>> 16);
+    return (hash & Integer.MAX_VALUE) % this.lanes.size();
+  }
+}
@@ -70,6 +70,9 @@ public class ScheduleServer {
   //任务管理器UUID
   private String managerFactoryUUID;
 
+  // 注册时的程序版本，旧版本的程序没有这个字段，迁移任务项存储格式前据此检查
+  private String programVersion;
+
 
   static ScheduleServer createScheduleServer(IScheduleDataManager aScheduleCenter, String aBaseTaskType,String aOwnSign, int aThreadNum) throws Exception {
     ScheduleServer result = new ScheduleServer();
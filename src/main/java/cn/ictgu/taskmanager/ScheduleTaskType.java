@@ -28,21 +28,76 @@ public class ScheduleTaskType implements Serializable {
   // 当没有数据的时候，休眠的时间
   private int sleepTimeNoData = 500;
 
+  // 连续没有数据时，休眠时间从该值开始加倍，直到sleepTimeNoData，0表示每次都休眠sleepTimeNoData
+  private int minSleepTimeNoData = 0;
+
   // 在每次数据处理晚后休眠的时间
   private int sleepTimeInterval = 0;
 
   // 每次获取数据的数量
   private int fetchDataNumber = 500;
 
+  // 自适应调整每次获取数据数量时的下限和上限，maxFetchDataNumber为0表示不调整
+  private int minFetchDataNumber = 0;
+  private int maxFetchDataNumber = 0;
+
   // 在批处理的时候，每次处理的数据量
   private int executeNumber = 1;
 
+  // NOTSLEEP模式批处理时的最小数量，不足时最多等待executeLingerTime毫秒凑批，0表示不等待
+  private int minExecuteNumber = 0;
+  private int executeLingerTime = 0;
+
   // 线程数
   private int threadNumber = 5;
 
-  // 调度器类型，默认"SLEEP"
+  // 弹性线程数的下限和上限，maxThreads为0表示线程数固定为threadNumber
+  private int minThreads = 0;
+  private int maxThreads = 0;
+
+  // 弹性线程数时，线程空闲超过该时间后退出，毫秒
+  private long threadKeepAliveTime = 60 * 1000;
+
+  // SLEEP、NOTSLEEP模式下是否按分区键顺序处理，分区键相同的任务由同一个线程串行处理
+  // VIRTUAL、SHARED模式下每个任务单独提交执行，不支持顺序处理，设置后只打印警告
+  private boolean partitionOrdered = false;
+
+  // SHARED模式下在共享线程池中的权重，权重越大分到的处理线程越多
+  private int sharedWeight = 1;
+
+  // 单次处理任务的超时时间，超时的处理线程被中断并替换，毫秒，0表示不限制
+  private long executeTimeout = 0;
+
+  // 处理失败的任务的最大重试次数，0表示不重试
+  private int maxRetryTimes = 0;
+
+  // 第一次重试前等待的时间，之后每次加倍，毫秒
+  private long retryDelay = 1000;
+
+  // 等待重试的任务数上限，0表示与每次获取数据的数量相同
+  private int retryQueueSize = 0;
+
+  // 内存中持有的数据量上限，包括队列中未处理的和超出预算分页暂存的数据，0表示不限制
+  private int maxHoldDataNumber = 0;
+
+  // 调度器类型："SLEEP"、"NOTSLEEP"、"VIRTUAL"、"SHARED"，默认"SLEEP"
   private String processorType = "SLEEP";
 
+  // NOTSLEEP模式下预取的低水位，队列中的任务少于该值时在后台获取下一批数据，0表示不预取
+  private int prefetchLowWaterMark = 0;
+
+  // VIRTUAL模式下同时处理的任务数上限，0表示与线程数相同
+  private int maxConcurrency = 0;
+
+  // 异步任务(IScheduleTaskDealAsync)同时处理中的数量上限，0表示与每次获取数据的数量相同
+  private int maxInFlight = 0;
+
+  // 按任务项分组并行查询时每组的任务项数量，0表示不分组，所有任务项一起查询
+  private int fetchGroupSize = 0;
+
+  // 并行查询的线程数，0表示与线程数相同
+  private int fetchThreadNumber = 0;
+
   // 允许执行的开始时间
   private String permitRunStartTime;
 
@@ -70,6 +125,9 @@ public class ScheduleTaskType implements Serializable {
   // 每个线程组能处理的最大任务项目数目
   private int maxTaskItemsOfOneThreadGroup = 0;
 
+  // 区间任务项（例如 0-65535）拆分成的任务项数量，每段是一个连续的子区间，按段分配给服务器
+  private int rangeTaskItemNumber = 256;
+
   // 版本号
   private long version;
 
@@ -86,11 +144,31 @@ public class ScheduleTaskType implements Serializable {
            ", heartBeatRate=" + heartBeatRate +
            ", judgeDeadInterval=" + judgeDeadInterval +
            ", sleepTimeNoData=" + sleepTimeNoData +
+           ", minSleepTimeNoData=" + minSleepTimeNoData +
            ", sleepTimeInterval=" + sleepTimeInterval +
            ", fetchDataNumber=" + fetchDataNumber +
+           ", minFetchDataNumber=" + minFetchDataNumber +
+           ", maxFetchDataNumber=" + maxFetchDataNumber +
            ", executeNumber=" + executeNumber +
+           ", minExecuteNumber=" + minExecuteNumber +
+           ", executeLingerTime=" + executeLingerTime +
            ", threadNumber=" + threadNumber +
+           ", minThreads=" + minThreads +
+           ", maxThreads=" + maxThreads +
+           ", threadKeepAliveTime=" + threadKeepAliveTime +
+           ", partitionOrdered=" + partitionOrdered +
+           ", sharedWeight=" + sharedWeight +
+           ", executeTimeout=" + executeTimeout +
+           ", maxRetryTimes=" + maxRetryTimes +
+           ", retryDelay=" + retryDelay +
+           ", retryQueueSize=" + retryQueueSize +
+           ", maxHoldDataNumber=" + maxHoldDataNumber +
            ", processorType='" + processorType + '\'' +
+           ", prefetchLowWaterMark=" + prefetchLowWaterMark +
+           ", maxConcurrency=" + maxConcurrency +
+           ", maxInFlight=" + maxInFlight +
+           ", fetchGroupSize=" + fetchGroupSize +
+           ", fetchThreadNumber=" + fetchThreadNumber +
            ", permitRunStartTime='" + permitRunStartTime + '\'' +
            ", permitRunEndTime='" + permitRunEndTime + '\'' +
            ", expireOwnSignInterval=" + expireOwnSignInterval +
@@ -99,6 +177,7 @@ public class ScheduleTaskType implements Serializable {
            ", taskKind='" + taskKind + '\'' +
            ", taskItems=" + Arrays.toString(taskItems) +
            ", maxTaskItemsOfOneThreadGroup=" + maxTaskItemsOfOneThreadGroup +
+           ", rangeTaskItemNumber=" + rangeTaskItemNumber +
            ", version=" + version +
            ", sts='" + sts + '\'' +
            '}';
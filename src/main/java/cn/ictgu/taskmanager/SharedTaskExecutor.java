@@ -0,0 +1,336 @@
+package cn.ictgu.taskmanager;
+
+import lombok.extern.log4j.Log4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 同一个JVM中所有SHARED模式的任务共用的处理线程池，由AnyScheduleManagerFactory持有
+ * 1、线程总数固定，不随任务类型的数量增加
+ * 2、每个调度处理器注册一个队列，按权重公平调度（WFQ）：队列的虚拟时间按处理耗时/权重增加，空闲线程总是从虚拟时间最小的队列取任务
+ *    取出任务时先按该队列的平均耗时预先计入，处理完成后按实际耗时修正，避免并发取任务时同一个队列被连续选中
+ * 3、队列从空变为非空时，虚拟时间不低于当前的全局虚拟时间，空闲期间不会积累额度
+ * 4、处理超时被放弃的线程由compensate补充一个新线程，被放弃的线程处理完当前任务后退出，处理线程数保持不变
+ * 5、shutdown后不再接受新的任务，不中断处理中的任务，已经提交的任务处理完毕后处理线程退出
+ */
+@Log4j
+public class SharedTaskExecutor {
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition notEmpty = this.lock.newCondition();
+
+  // 有队列处理完所有已提交的任务
+  private final Condition queueIdle = this.lock.newCondition();
+
+  private final List<FairQueue> queues = new ArrayList<>();
+
+  // 正常工作的处理线程，由lock保护
+  private final List<Thread> threads = new ArrayList<>();
+
+  // 处理超时被放弃、已经补充了新线程的处理线程，处理完当前任务后退出
+  private final Set<Thread> retiredThreads = ConcurrentHashMap.newKeySet();
+
+  private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+  private final int threadNumber;
+
+  // 最近一次取出的任务的虚拟时间
+  private double virtualTime = 0;
+
+  private volatile boolean isShutdown = false;
+
+  public SharedTaskExecutor(int threadNumber) {
+    this.threadNumber = threadNumber;
+    this.lock.lock();
+    try {
+      for (int i = 0; i < threadNumber; i++) {
+        this.startThread();
+      }
+    } finally {
+      this.lock.unlock();
+    }
+    log.info("启动共享处理线程池，线程数：" + threadNumber);
+  }
+
+  /**
+   * 调用时需要持有lock
+   */
+  private void startThread() {
+    Thread thread = new Thread(this::work, "AnySchedule-shared-exe" + this.threadIndex.getAndIncrement());
+    thread.setDaemon(true);
+    this.threads.add(thread);
+    thread.start();
+  }
+
+  /**
+   * 处理线程上的任务超时被放弃，补充一个新的处理线程，被放弃的线程处理完当前任务后退出
+   */
+  void compensate(Thread thread) {
+    this.lock.lock();
+    try {
+      if (this.isShutdown || !this.threads.remove(thread)) {
+        return;
+      }
+      this.retiredThreads.add(thread);
+      this.startThread();
+    } finally {
+      this.lock.unlock();
+    }
+    log.warn(thread.getName() + "：任务处理超时被放弃，补充一个共享处理线程");
+  }
+
+  /**
+   * 注册一个调度处理器的队列
+   * @param name 队列名称，用于日志
+   * @param weight 权重，不小于1
+   */
+  FairQueue newQueue(String name, int weight) {
+    FairQueue queue = new FairQueue(name, Math.max(weight, 1));
+    this.lock.lock();
+    try {
+      this.queues.add(queue);
+    } finally {
+      this.lock.unlock();
+    }
+    return queue;
+  }
+
+  /**
+   * 不再接受新的任务，已经提交的任务仍然会被处理，不中断处理中的任务
+   */
+  public void shutdown() {
+    this.isShutdown = true;
+    this.lock.lock();
+    try {
+      this.notEmpty.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  public int getThreadNumber() {
+    return this.threadNumber;
+  }
+
+  private void work() {
+    while (true) {
+      TakenTask taken;
+      try {
+        taken = this.take();
+      } catch (InterruptedException e) {
+        continue;
+      }
+      if (taken == null) {
+        return;
+      }
+      long startTime = System.nanoTime();
+      try {
+        taken.task.run();
+      } catch (Throwable e) {
+        log.error("共享线程处理任务失败：", e);
+      }
+      this.charge(taken.queue, System.nanoTime() - startTime);
+      if (this.retiredThreads.remove(Thread.currentThread())) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * 从虚拟时间最小的非空队列中取出一个任务，按队列的平均耗时预先计入虚拟时间
+   * 线程池已经关闭并且所有队列都为空时返回null
+   */
+  private TakenTask take() throws InterruptedException {
+    this.lock.lockInterruptibly();
+    try {
+      while (true) {
+        FairQueue selected = null;
+        for (FairQueue queue : this.queues) {
+          if (!queue.tasks.isEmpty() && (selected == null || queue.pass < selected.pass)) {
+            selected = queue;
+          }
+        }
+        if (selected != null) {
+          this.virtualTime = selected.pass;
+          selected.pass = selected.pass + selected.averageTime / selected.weight;
+          return new TakenTask(selected, selected.tasks.poll());
+        }
+        if (this.isShutdown) {
+          return null;
+        }
+        this.notEmpty.await();
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * 任务处理完成，按实际耗时修正队列的虚拟时间，并更新平均耗时
+   */
+  private void charge(FairQueue queue, long spendNanos) {
+    this.lock.lock();
+    try {
+      queue.pass = queue.pass + (spendNanos - queue.averageTime) / queue.weight;
+      queue.averageTime = queue.averageTime * 0.875 + spendNanos * 0.125;
+      queue.finishOne();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * 一个调度处理器的任务队列，提交的任务由共享线程处理
+   * shutdown后不再接受新的任务，已经提交的任务处理完毕后从共享线程池注销，此时isTerminated返回true
+   */
+  class FairQueue extends AbstractExecutorService {
+
+    private final String name;
+
+    private final int weight;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    // 虚拟时间，单位纳秒/权重，由lock保护
+    private double pass;
+
+    // 处理一个任务的平均耗时（纳秒），取任务时预先计入虚拟时间，由lock保护
+    private double averageTime = 1000000;
+
+    // 已经提交还没有处理完的任务数，包括排队中和处理中的，由lock保护
+    private int pendingCount = 0;
+
+    private volatile boolean isShutdown = false;
+
+    FairQueue(String name, int weight) {
+      this.name = name;
+      this.weight = weight;
+    }
+
+    public void execute(Runnable command) {
+      lock.lock();
+      try {
+        if (this.isShutdown || SharedTaskExecutor.this.isShutdown) {
+          throw new RejectedExecutionException(this.name + "：共享线程池已经关闭");
+        }
+        if (this.tasks.isEmpty()) {
+          this.pass = Math.max(this.pass, virtualTime);
+        }
+        this.tasks.add(command);
+        this.pendingCount = this.pendingCount + 1;
+        notEmpty.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * 一个任务处理完成，调用时需要持有lock
+     */
+    private void finishOne() {
+      this.pendingCount = this.pendingCount - 1;
+      this.deregisterIfTerminated();
+    }
+
+    /**
+     * 已经关闭并且没有未处理完的任务时从共享线程池注销，调用时需要持有lock
+     */
+    private void deregisterIfTerminated() {
+      if (this.isShutdown && this.pendingCount == 0) {
+        queues.remove(this);
+        queueIdle.signalAll();
+      }
+    }
+
+    /**
+     * 处理线程上的任务超时被放弃，由共享线程池补充一个新的处理线程
+     */
+    void compensate(Thread thread) {
+      SharedTaskExecutor.this.compensate(thread);
+    }
+
+    /**
+     * 不再接受新的任务，已经提交的任务仍然会被处理
+     */
+    public void shutdown() {
+      lock.lock();
+      try {
+        this.isShutdown = true;
+        this.deregisterIfTerminated();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * 不再接受新的任务，返回还没有开始处理的任务，这些任务不会再被处理，由调用者负责释放其占用的资源
+     */
+    public List<Runnable> shutdownNow() {
+      lock.lock();
+      try {
+        this.isShutdown = true;
+        List<Runnable> result = new ArrayList<>(this.tasks);
+        this.tasks.clear();
+        this.pendingCount = this.pendingCount - result.size();
+        this.deregisterIfTerminated();
+        return result;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public boolean isShutdown() {
+      return this.isShutdown;
+    }
+
+    public boolean isTerminated() {
+      lock.lock();
+      try {
+        return this.isShutdown && this.pendingCount == 0;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      long nanos = unit.toNanos(timeout);
+      lock.lock();
+      try {
+        while (!(this.isShutdown && this.pendingCount == 0)) {
+          if (nanos <= 0) {
+            return false;
+          }
+          nanos = queueIdle.awaitNanos(nanos);
+        }
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * 取出的任务和所在的队列，处理完成后修正队列的虚拟时间
+   */
+  private static final class TakenTask {
+    final FairQueue queue;
+    final Runnable task;
+
+    TakenTask(FairQueue queue, Runnable task) {
+      this.queue = queue;
+      this.task = task;
+    }
+  }
+}
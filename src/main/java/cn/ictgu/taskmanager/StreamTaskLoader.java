@@ -0,0 +1,90 @@
+package cn.ictgu.taskmanager;
+
+import cn.ictgu.commen.IScheduleTaskCursor;
+import cn.ictgu.commen.IScheduleTaskDealStream;
+import cn.ictgu.commen.TaskItemDefine;
+import lombok.extern.log4j.Log4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以游标方式装载任务，由各个调度处理器共用
+ * 1、游标中的数据分批读取，每批不超过每次获取数据的数量
+ * 2、任务项重新分配后，游标作废，重新打开
+ */
+@Log4j
+class StreamTaskLoader<T> {
+
+  private final AnyScheduleManager scheduleManager;
+
+  private final IScheduleTaskDealStream<T> taskDealBean;
+
+  // 当前打开的游标
+  private IScheduleTaskCursor<T> cursor;
+
+  // 打开游标时使用的任务项
+  private List<TaskItemDefine> cursorTaskItems;
+
+  StreamTaskLoader(AnyScheduleManager scheduleManager, IScheduleTaskDealStream<T> taskDealBean) {
+    this.scheduleManager = scheduleManager;
+    this.taskDealBean = taskDealBean;
+  }
+
+  /**
+   * 游标中是否还有数据
+   */
+  synchronized boolean hasRemaining() {
+    try {
+      return this.cursor != null && this.cursor.hasNext();
+    } catch (Throwable ex) {
+      log.error("读取任务游标错误", ex);
+      this.close();
+      return false;
+    }
+  }
+
+  /**
+   * 读取下一批数据，游标中的数据读取完毕或者任务项已经变化时，用taskItems重新打开游标
+   * @param taskItems 当前的任务项
+   * @param eachFetchDataNum 每次获取数据的数量
+   */
+  synchronized List<T> loadTasks(List<TaskItemDefine> taskItems, int eachFetchDataNum) throws Exception {
+    if (this.cursorTaskItems != taskItems || !this.hasRemaining()) {
+      this.close();
+      List<TaskItemDefine> tmpTaskList = new ArrayList<>();
+      synchronized (taskItems) {
+        tmpTaskList.addAll(taskItems);
+      }
+      ScheduleTaskType taskTypeInfo = this.scheduleManager.getTaskTypeInfo();
+      this.cursor = this.taskDealBean.openTasks(taskTypeInfo.getTaskParameter(), this.scheduleManager.getScheduleServer().getOwnSign(), this.scheduleManager.getTaskItemCount(), tmpTaskList);
+      this.cursorTaskItems = taskItems;
+    }
+    List<T> result = new ArrayList<>();
+    try {
+      while (result.size() < eachFetchDataNum && this.cursor.hasNext()) {
+        result.add(this.cursor.next());
+      }
+    } catch (Throwable ex) {
+      this.close();
+      throw ex;
+    }
+    return result;
+  }
+
+  /**
+   * 关闭当前的游标
+   */
+  synchronized void close() {
+    if (this.cursor == null) {
+      return;
+    }
+    try {
+      this.cursor.close();
+    } catch (Throwable ex) {
+      log.error("关闭任务游标错误", ex);
+    }
+    this.cursor = null;
+    this.cursorTaskItems = null;
+  }
+}
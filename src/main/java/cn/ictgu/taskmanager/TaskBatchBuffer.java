@@ -0,0 +1,87 @@
+package cn.ictgu.taskmanager;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 批处理的缓冲区，每个处理线程一个，减少批处理时的内存分配
+ * 1、从任务队列批量取任务时使用可重用的临时数组
+ * 2、任务处理类实现IScheduleTaskDealMultiList时，批次使用Object[]，处理成功的批次回收后，下一批数量相同时直接重用
+ * 3、传给execute(List)的列表是可重用的视图，只在execute期间有效
+ */
+class TaskBatchBuffer {
+
+  private Object[] scratch = new Object[0];
+
+  // 回收的批次数组，下一批数量相同时重用
+  private Object[] recycled;
+
+  private final BatchView view = new BatchView();
+
+  /**
+   * 可重用的临时数组，长度不小于size
+   */
+  Object[] getScratch(int size) {
+    if (this.scratch.length < size) {
+      this.scratch = new Object[size];
+    }
+    return this.scratch;
+  }
+
+  /**
+   * 把临时数组中的前size个任务复制为一个批次
+   * @param componentType 数组的类型，为null时使用Object[]并优先重用回收的数组
+   */
+  Object[] copyOf(int size, Class<?> componentType) {
+    Object[] result;
+    if (componentType != null) {
+      result = (Object[]) Array.newInstance(componentType, size);
+    } else if (this.recycled != null && this.recycled.length == size) {
+      result = this.recycled;
+      this.recycled = null;
+    } else {
+      result = new Object[size];
+    }
+    System.arraycopy(this.scratch, 0, result, 0, size);
+    Arrays.fill(this.scratch, 0, size, null);
+    return result;
+  }
+
+  /**
+   * 回收已经处理完毕、不再被引用的批次
+   */
+  void recycle(Object[] batch) {
+    Arrays.fill(batch, null);
+    this.recycled = batch;
+  }
+
+  /**
+   * 批次的列表视图，使用完需要调用clearList
+   */
+  List<Object> asList(Object[] batch) {
+    this.view.batch = batch;
+    return this.view;
+  }
+
+  void clearList() {
+    this.view.batch = null;
+  }
+
+  private static class BatchView extends AbstractList<Object> implements RandomAccess {
+    private Object[] batch;
+
+    public Object get(int index) {
+      if (this.batch == null || index >= this.batch.length) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+      }
+      return this.batch[index];
+    }
+
+    public int size() {
+      return this.batch == null ? 0 : this.batch.length;
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package cn.ictgu.taskmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 任务队列，预先分配容量的环形缓冲区
+ * 1、出队（poll、drainTo）无锁，多个处理线程可以并发获取任务
+ * 2、入队（offer、addAll）同一时刻只能由一个线程调用，即装载数据的线程
+ * 3、队列为空时装载的数据超过容量，会按2的幂次扩容
+ */
+class TaskQueue<T> {
+
+  private static final int MIN_CAPACITY = 16;
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private volatile Ring ring;
+
+  // 下一个出队的位置
+  private final AtomicLong head = new AtomicLong(0);
+
+  // 下一个入队的位置
+  private final AtomicLong tail = new AtomicLong(0);
+
+  TaskQueue(int initialCapacity) {
+    this.ring = new Ring(tableSizeFor(initialCapacity), 0);
+  }
+
+  /**
+   * 放入单个任务，队列已满时返回false
+   */
+  boolean offer(T task) {
+    if (task == null) {
+      throw new NullPointerException("任务不能为null");
+    }
+    Ring r = this.ring;
+    long t = this.tail.get();
+    if (t - this.head.get() >= r.slots.length) {
+      return false;
+    }
+    int index = (int) (t & r.mask);
+    // 出队线程已经移动了head，但可能还没有释放槽位
+    while (r.sequences.get(index) != t) {
+      Thread.yield();
+    }
+    r.slots[index] = task;
+    this.tail.set(t + 1);
+    return true;
+  }
+
+  /**
+   * 放入一批任务，返回实际放入的数量
+   */
+  int addAll(List<? extends T> tasks) {
+    if (tasks.size() > this.remainingCapacity() && this.isEmpty()) {
+      this.grow(tasks.size());
+    }
+    int count = 0;
+    for (T task : tasks) {
+      if (!this.offer(task)) {
+        break;
+      }
+      count = count + 1;
+    }
+    return count;
+  }
+
+  /**
+   * 按正序获取一个任务，队列为空时返回null
+   */
+  T poll() {
+    while (true) {
+      Ring r = this.ring;
+      long h = this.head.get();
+      long t = this.tail.get();
+      if (h >= t) {
+        return null;
+      }
+      if (r != this.ring) {
+        continue;
+      }
+      if (this.head.compareAndSet(h, h + 1)) {
+        return this.take(r, h);
+      }
+    }
+  }
+
+  /**
+   * 按正序批量获取任务，写入target中，返回获取的数量
+   */
+  @SuppressWarnings("unchecked")
+  int drainTo(Object[] target, int maxElements) {
+    int max = Math.min(maxElements, target.length);
+    while (true) {
+      Ring r = this.ring;
+      long h = this.head.get();
+      long t = this.tail.get();
+      int size = (int) Math.min(max, t - h);
+      if (size <= 0) {
+        return 0;
+      }
+      if (r != this.ring) {
+        continue;
+      }
+      if (this.head.compareAndSet(h, h + size)) {
+        for (int i = 0; i < size; i++) {
+          target[i] = this.take(r, h + i);
+        }
+        return size;
+      }
+    }
+  }
+
+  /**
+   * 丢弃队列中所有未处理的任务
+   */
+  void clear() {
+    while (true) {
+      Ring r = this.ring;
+      long h = this.head.get();
+      long t = this.tail.get();
+      if (h >= t) {
+        return;
+      }
+      if (r != this.ring) {
+        continue;
+      }
+      if (this.head.compareAndSet(h, t)) {
+        for (long position = h; position < t; position++) {
+          this.take(r, position);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * 队列中任务的快照，与出队线程并发时可能缺少刚被取走的任务
+   */
+  @SuppressWarnings("unchecked")
+  List<T> toList() {
+    while (true) {
+      Ring r = this.ring;
+      long h = this.head.get();
+      long t = this.tail.get();
+      if (r != this.ring) {
+        continue;
+      }
+      List<T> result = new ArrayList<>(t > h ? (int) (t - h) : 0);
+      for (long position = h; position < t; position++) {
+        Object task = r.slots[(int) (position & r.mask)];
+        if (task != null) {
+          result.add((T) task);
+        }
+      }
+      return result;
+    }
+  }
+
+  int size() {
+    long size = this.tail.get() - this.head.get();
+    return size > 0 ? (int) size : 0;
+  }
+
+  boolean isEmpty() {
+    return this.size() == 0;
+  }
+
+  int capacity() {
+    return this.ring.slots.length;
+  }
+
+  private int remainingCapacity() {
+    return this.capacity() - this.size();
+  }
+
+  @SuppressWarnings("unchecked")
+  private T take(Ring r, long position) {
+    int index = (int) (position & r.mask);
+    T task = (T) r.slots[index];
+    r.slots[index] = null;
+    r.sequences.set(index, position + r.slots.length);
+    return task;
+  }
+
+  /**
+   * 只在队列为空时由入队线程调用，出队线程读到旧的缓冲区时会重试
+   */
+  private void grow(int minCapacity) {
+    this.ring = new Ring(tableSizeFor(minCapacity), this.tail.get());
+  }
+
+  private static int tableSizeFor(int capacity) {
+    if (capacity >= MAX_CAPACITY) {
+      return MAX_CAPACITY;
+    }
+    int size = MIN_CAPACITY;
+    while (size < capacity) {
+      size = size << 1;
+    }
+    return size;
+  }
+
+  /**
+   * 环形缓冲区，sequences[i] 等于可以写入该槽位的下一个位置
+   */
+  private static final class Ring {
+    final Object[] slots;
+    final AtomicLongArray sequences;
+    final int mask;
+
+    Ring(int capacity, long position) {
+      this.slots = new Object[capacity];
+      this.sequences = new AtomicLongArray(capacity);
+      this.mask = capacity - 1;
+      for (int i = 0; i < capacity; i++) {
+        long p = position + i;
+        this.sequences.set((int) (p & this.mask), p);
+      }
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package cn.ictgu.taskmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 处理失败的任务的重试队列，配置了maxRetryTimes时开启
+ * 1、第n次失败后等待 retryDelay * 2^(n-1) 毫秒再重试，失败次数超过maxRetryTimes后放弃
+ * 2、队列中的任务数有上限，队列满时放弃重试
+ * 3、单个任务和批处理的任务数组都作为一个整体重试
+ */
+class TaskRetryQueue {
+
+  // 重试等待时间的上限，毫秒
+  private static final long MAX_RETRY_DELAY = 10 * 60 * 1000;
+
+  private final DelayQueue<RetryTask> queue = new DelayQueue<>();
+
+  private final StatisticsInfo statisticsInfo;
+
+  private final int maxRetryTimes;
+
+  private final long retryDelay;
+
+  private final int capacity;
+
+  TaskRetryQueue(ScheduleTaskType taskTypeInfo, StatisticsInfo statisticsInfo) {
+    this.statisticsInfo = statisticsInfo;
+    this.maxRetryTimes = taskTypeInfo.getMaxRetryTimes();
+    this.retryDelay = Math.max(taskTypeInfo.getRetryDelay(), 1);
+    this.capacity = taskTypeInfo.getRetryQueueSize() > 0 ? taskTypeInfo.getRetryQueueSize() : taskTypeInfo.getFetchDataNumber();
+  }
+
+  /**
+   * 任务处理失败后调用，返回true表示已经放入重试队列
+   * @param task 单个任务或者任务数组
+   * @param failTimes 包括本次在内的失败次数
+   */
+  boolean retry(Object task, int failTimes) {
+    int taskNum = task instanceof Object[] ? ((Object[]) task).length : 1;
+    if (failTimes > this.maxRetryTimes || this.queue.size() >= this.capacity) {
+      this.statisticsInfo.addRetryGiveUpNum(taskNum);
+      return false;
+    }
+    long delay = Math.min(this.retryDelay << Math.min(failTimes - 1, 30), MAX_RETRY_DELAY);
+    this.queue.offer(new RetryTask(task, failTimes, System.currentTimeMillis() + delay));
+    this.statisticsInfo.addRetryNum(taskNum);
+    return true;
+  }
+
+  /**
+   * 获取一个已经到期的重试任务，没有时返回null
+   */
+  RetryTask poll() {
+    return this.queue.poll();
+  }
+
+  /**
+   * 等待下一个到期的重试任务，超时返回null
+   */
+  RetryTask poll(long timeout) throws InterruptedException {
+    return this.queue.poll(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 距离下一个重试任务到期的毫秒数，已经到期时返回0，队列为空时返回-1
+   */
+  long getNextRetryDelay() {
+    RetryTask retryTask = this.queue.peek();
+    if (retryTask == null) {
+      return -1;
+    }
+    return Math.max(retryTask.getDelay(TimeUnit.MILLISECONDS), 0);
+  }
+
+  boolean isEmpty() {
+    return this.queue.isEmpty();
+  }
+
+  void clear() {
+    this.queue.clear();
+  }
+
+  /**
+   * 等待重试的任务，单个任务或者任务数组
+   */
+  List<Object> getPendingTasks() {
+    List<Object> result = new ArrayList<>();
+    for (RetryTask retryTask : this.queue) {
+      result.add(retryTask.task);
+    }
+    return result;
+  }
+
+  /**
+   * 等待重试的任务
+   */
+  static class RetryTask implements Delayed {
+    // 单个任务或者任务数组
+    final Object task;
+    // 已经失败的次数
+    final int failTimes;
+    private final long retryTime;
+
+    RetryTask(Object task, int failTimes, long retryTime) {
+      this.task = task;
+      this.failTimes = failTimes;
+      this.retryTime = retryTime;
+    }
+
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(this.retryTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public int compareTo(Delayed o) {
+      return Long.compare(this.getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
+    }
+  }
+}
@@ -20,6 +20,7 @@ import lombok.extern.log4j.Log4j;
 import org.apache.commons.lang.StringUtils;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
@@ -37,6 +38,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,10 +55,22 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
   private String PATH_BaseTaskType;
   private String PATH_TaskItem = "taskItem";
   private String PATH_Server = "server";
+  // 任务项分配和释放时一个事务中的最大操作数，避免超过 jute.maxbuffer
+  private static final int MAX_OPS_OF_ONE_MULTI = 500;
+  // 任务项分配和释放时节点版本已经变化的最大重试次数
+  private static final int MAX_RETRY_OF_BAD_VERSION = 3;
   private long zkBaseTime = 0;
   private long localBaseTime = 0;
 
+  // 心跳和任务分配时频繁读取的 server、taskItem 节点的本地缓存
+  private ZKCache cache;
+
   private Comparator<String> comparator = (u1, u2)-> {
+    long[] r1 = ScheduleUtil.parseTaskItemRange(u1);
+    long[] r2 = ScheduleUtil.parseTaskItemRange(u2);
+    if (r1 != null && r2 != null) {
+      return Long.compare(r1[0], r2[0]);
+    }
     if (StringUtils.isNumeric(u1) && StringUtils.isNumeric(u2)) {
       int iU1 = Integer.parseInt(u1);
       int iU2 = Integer.parseInt(u2);
@@ -74,6 +88,7 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 
   public ScheduleDataManager4ZK(ZKManager aZkManager) throws Exception {
     this.zkManager = aZkManager;
+    this.cache = new ZKCache(aZkManager);
     gson = new GsonBuilder().registerTypeAdapter(Timestamp.class, new TimestampTypeAdapter()).setDateFormat("yyyy-MM-dd HH:mm:ss").create();
     this.PATH_BaseTaskType = this.zkManager.getRootPath() + "/baseTaskType";
     if (this.getZooKeeper().exists(this.PATH_BaseTaskType, false) == null) {
@@ -169,7 +184,8 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     if (this.getZooKeeper().exists(zkPath, false) == null) {
       this.getZooKeeper().create(zkPath, null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
     }
-    this.createScheduleTaskItem(baseTaskType, ownSign, this.loadTaskTypeBaseInfo(baseTaskType).getTaskItems());
+    this.cache.clear();
+    this.createScheduleTaskItem(baseTaskType, ownSign, this.loadTaskTypeBaseInfo(baseTaskType));
     setInitialRunningInfoSuccess(baseTaskType, taskType, managerFactoryUUID);
   }
 
@@ -206,6 +222,7 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_Server;
     Stat stat = this.getZooKeeper().setData(zkPath, "reload=true".getBytes(), -1);
+    this.cache.invalidate(zkPath);
     return stat.getVersion();
   }
 
@@ -213,10 +230,10 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     Map<String, Stat> statMap = new HashMap<>();
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_Server;
-    List<String> children = this.getZooKeeper().getChildren(zkPath, false);
+    List<String> children = this.cache.getChildren(zkPath);
     for (String server : children) {
       String singleServer = zkPath + "/" + server;
-      Stat serverStat = this.getZooKeeper().exists(singleServer, false);
+      Stat serverStat = this.cache.exists(singleServer);
       statMap.put(server, serverStat);
     }
     return statMap;
@@ -226,35 +243,55 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType
                     + "/" + taskType + "/" + this.PATH_Server;
-    Stat stat = new Stat();
-    this.getZooKeeper().getData(zkPath, false, stat);
+    Stat stat = this.cache.exists(zkPath);
+    if (stat == null) {
+      throw new KeeperException.NoNodeException(zkPath);
+    }
     return stat.getVersion();
   }
 
   /**
    * 根据基础配置里面的任务项来创建各个域里面的任务项
+   * 区间任务项（例如 0-65535）拆分成rangeTaskItemNumber段连续的子区间，每段创建一个任务项，名称为子区间
    * @param baseTaskType 任务类型名称
    * @param ownSign 域
-   * @param baseTaskItems 任务项
+   * @param taskTypeInfo 任务类型的基础配置
    */
-  private void createScheduleTaskItem(String baseTaskType, String ownSign, String[] baseTaskItems) throws Exception {
-    ScheduleTaskItem[] taskItems = new ScheduleTaskItem[baseTaskItems.length];
+  private void createScheduleTaskItem(String baseTaskType, String ownSign, ScheduleTaskType taskTypeInfo) throws Exception {
+    String[] baseTaskItems = taskTypeInfo.getTaskItems();
+    List<ScheduleTaskItem> taskItems = new ArrayList<>(baseTaskItems.length);
     Pattern p = Pattern.compile("\\s*:\\s*\\{");
-    for (int i = 0; i < baseTaskItems.length; i++) {
-      taskItems[i] = new ScheduleTaskItem();
-      taskItems[i].setBaseTaskType(baseTaskType);
-      taskItems[i].setTaskType(ScheduleUtil.getTaskTypeByBaseAndOwnSign(baseTaskType, ownSign));
-      taskItems[i].setOwnSign(ownSign);
-      Matcher matcher = p.matcher(baseTaskItems[i]);
+    for (String baseTaskItem : baseTaskItems) {
+      String taskItemName = baseTaskItem;
+      String dealParameter = null;
+      Matcher matcher = p.matcher(baseTaskItem);
       if (matcher.find()) {
-        taskItems[i].setTaskItem(baseTaskItems[i].substring(0, matcher.start()).trim());
-        taskItems[i].setDealParameter(baseTaskItems[i].substring(matcher.end(), baseTaskItems[i].length() - 1).trim());
-      } else {
-        taskItems[i].setTaskItem(baseTaskItems[i]);
+        taskItemName = baseTaskItem.substring(0, matcher.start()).trim();
+        dealParameter = baseTaskItem.substring(matcher.end(), baseTaskItem.length() - 1).trim();
+      }
+      long[] range = ScheduleUtil.parseTaskItemRange(taskItemName);
+      if (range == null) {
+        taskItems.add(this.newScheduleTaskItem(baseTaskType, ownSign, taskItemName, dealParameter));
+        continue;
       }
-      taskItems[i].setSts(ScheduleTaskItem.TaskItemSts.ACTIVTE);
+      for (long[] subRange : ScheduleUtil.splitTaskItemRange(range[0], range[1], taskTypeInfo.getRangeTaskItemNumber())) {
+        taskItems.add(this.newScheduleTaskItem(baseTaskType, ownSign, subRange[0] + "-" + subRange[1], dealParameter));
+      }
+    }
+    createScheduleTaskItem(taskItems.toArray(new ScheduleTaskItem[taskItems.size()]));
+  }
+
+  private ScheduleTaskItem newScheduleTaskItem(String baseTaskType, String ownSign, String taskItemName, String dealParameter) {
+    ScheduleTaskItem taskItem = new ScheduleTaskItem();
+    taskItem.setBaseTaskType(baseTaskType);
+    taskItem.setTaskType(ScheduleUtil.getTaskTypeByBaseAndOwnSign(baseTaskType, ownSign));
+    taskItem.setOwnSign(ownSign);
+    taskItem.setTaskItem(taskItemName);
+    if (dealParameter != null) {
+      taskItem.setDealParameter(dealParameter);
     }
-    createScheduleTaskItem(taskItems);
+    taskItem.setSts(ScheduleTaskItem.TaskItemSts.ACTIVTE);
+    return taskItem;
   }
 
   /**
@@ -262,12 +299,25 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
    * @param taskItems 任务项
    */
   public void createScheduleTaskItem(ScheduleTaskItem[] taskItems) throws Exception {
+    boolean isCompact = this.isCompactTaskItemLayout();
+    List<Op> ops = new ArrayList<>();
     for (ScheduleTaskItem taskItem : taskItems) {
       String zkPath = this.PATH_BaseTaskType + "/" + taskItem.getBaseTaskType() + "/" + taskItem.getTaskType() + "/" + this.PATH_TaskItem;
       if (this.getZooKeeper().exists(zkPath, false) == null) {
         ZKTools.createPath(this.getZooKeeper(), zkPath, CreateMode.PERSISTENT, this.zkManager.getAcl());
       }
       String zkTaskItemPath = zkPath + "/" + taskItem.getTaskItem();
+      if (isCompact) {
+        TaskItemRecord record = new TaskItemRecord();
+        record.setSts(taskItem.getSts().toString());
+        record.setParameter(taskItem.getDealParameter());
+        record.setDealDesc(taskItem.getDealDesc());
+        ops.add(Op.create(zkTaskItemPath, record.toBytes(), this.zkManager.getAcl(), CreateMode.PERSISTENT));
+        if (ops.size() >= MAX_OPS_OF_ONE_MULTI) {
+          this.multi(ops);
+        }
+        continue;
+      }
       this.getZooKeeper().create(zkTaskItemPath, null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
       this.getZooKeeper().create(zkTaskItemPath + "/cur_server", null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
       this.getZooKeeper().create(zkTaskItemPath + "/req_server", null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
@@ -275,6 +325,8 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
       this.getZooKeeper().create(zkTaskItemPath + "/parameter", taskItem.getDealParameter().getBytes(), this.zkManager.getAcl(), CreateMode.PERSISTENT);
       this.getZooKeeper().create(zkTaskItemPath + "/deal_desc", taskItem.getDealDesc().getBytes(), this.zkManager.getAcl(), CreateMode.PERSISTENT);
     }
+    this.multi(ops);
+    this.cache.clear();
   }
 
   /**
@@ -287,6 +339,15 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
   public void updateScheduleTaskItemStatus(String taskType, String taskItem, ScheduleTaskItem.TaskItemSts sts, String message) throws Exception {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_TaskItem + "/" + taskItem;
+    Stat stat = new Stat();
+    byte[] data = this.getZooKeeper().getData(zkPath, false, stat);
+    if (data != null) {
+      TaskItemRecord record = TaskItemRecord.parse(data, stat.getVersion());
+      record.setSts(sts.toString());
+      record.setDealDesc(message == null ? "" : message);
+      this.setData(zkPath, record.toBytes(), record.getVersion());
+      return;
+    }
     if (this.getZooKeeper().exists(zkPath + "/sts", false) == null) {
       this.getZooKeeper().setData(zkPath + "/sts", sts.toString().getBytes(), -1);
     }
@@ -307,6 +368,7 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_TaskItem + "/" + taskItem;
     ZKTools.deleteTree(this.getZooKeeper(), zkPath);
+    this.cache.clear();
   }
 
   /**
@@ -323,28 +385,60 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     }
     List<String> taskItems = this.getZooKeeper().getChildren(zkPath, false);
     Collections.sort(taskItems, comparator);
+    // 所有任务项的节点数据一起读取，旧格式的任务项节点没有数据，再一起读取子节点
+    List<String> itemPaths = new ArrayList<>();
+    for (String taskItem : taskItems) {
+      itemPaths.add(zkPath + "/" + taskItem);
+    }
+    Map<String, byte[]> items = ZKTools.getDataAll(this.getZooKeeper(), itemPaths);
+    List<String> paths = new ArrayList<>();
+    for (String zkTaskItemPath : itemPaths) {
+      if (items.get(zkTaskItemPath) == null) {
+        for (String nodeName : TaskItemRecord.NODE_NAMES) {
+          paths.add(zkTaskItemPath + "/" + nodeName);
+        }
+      }
+    }
+    Map<String, byte[]> values = ZKTools.getDataAll(this.getZooKeeper(), paths);
     for (String taskItem : taskItems) {
       ScheduleTaskItem info = new ScheduleTaskItem();
       info.setTaskType(taskType);
       info.setTaskItem(taskItem);
       String zkTaskItemPath = zkPath + "/" + taskItem;
-      byte[] curContent = this.getZooKeeper().getData(zkTaskItemPath + "/cur_server", false, null);
+      byte[] data = items.get(zkTaskItemPath);
+      if (data != null) {
+        TaskItemRecord record = TaskItemRecord.parse(data, 0);
+        info.setCurrentScheduleServer(record.getCurrentServer());
+        info.setRequestScheduleServer(record.getRequestServer());
+        if (record.getSts() != null) {
+          info.setSts(ScheduleTaskItem.TaskItemSts.valueOf(record.getSts()));
+        }
+        if (record.getParameter() != null) {
+          info.setDealParameter(record.getParameter());
+        }
+        if (record.getDealDesc() != null) {
+          info.setDealDesc(record.getDealDesc());
+        }
+        result.add(info);
+        continue;
+      }
+      byte[] curContent = values.get(zkTaskItemPath + "/cur_server");
       if (curContent != null) {
         info.setCurrentScheduleServer(new String(curContent));
       }
-      byte[] reqContent = this.getZooKeeper().getData(zkTaskItemPath + "/req_server", false, null);
+      byte[] reqContent = values.get(zkTaskItemPath + "/req_server");
       if (reqContent != null) {
         info.setRequestScheduleServer(new String(reqContent));
       }
-      byte[] stsContent = this.getZooKeeper().getData(zkTaskItemPath + "/sts", false, null);
+      byte[] stsContent = values.get(zkTaskItemPath + "/sts");
       if (stsContent != null) {
         info.setSts(ScheduleTaskItem.TaskItemSts.valueOf(new String(stsContent)));
       }
-      byte[] parameterContent = this.getZooKeeper().getData(zkTaskItemPath + "/parameter", false, null);
+      byte[] parameterContent = values.get(zkTaskItemPath + "/parameter");
       if (parameterContent != null) {
         info.setDealParameter(new String(parameterContent));
       }
-      byte[] dealDescContent = this.getZooKeeper().getData(zkTaskItemPath + "/deal_desc", false, null);
+      byte[] dealDescContent = values.get(zkTaskItemPath + "/deal_desc");
       if (dealDescContent != null) {
         info.setDealDesc(new String(dealDescContent));
       }
@@ -382,6 +476,7 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     for (String name : list) {
       ZKTools.deleteTree(this.getZooKeeper(), zkPath + "/" + name);
     }
+    this.cache.clear();
   }
 
   public List<ScheduleTaskTypeRunningInfo> getAllTaskTypeRunningInfo(String baseTaskType) throws Exception {
@@ -404,6 +499,7 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
 
   public void deleteTaskType(String baseTaskType) throws Exception {
     ZKTools.deleteTree(this.getZooKeeper(), this.PATH_BaseTaskType + "/" + baseTaskType);
+    this.cache.clear();
   }
 
   public List<ScheduleServer> selectScheduleServer(String baseTaskType, String ownSign, String ip, String orderStr) throws Exception {
@@ -448,23 +544,29 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     throws Exception {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_TaskItem;
-    List<String> taskItems = this.getZooKeeper().getChildren(zkPath, false);
+    List<String> taskItems = this.cache.getChildren(zkPath);
     Collections.sort(taskItems, comparator);
+    this.prefetchTaskItems(zkPath, taskItems);
     log.debug(taskType + " current uid=" + uuid + " , zk  reloadDealTaskItem");
     List<TaskItemDefine> result = new ArrayList<>();
     for (String name : taskItems) {
-      byte[] value = this.getZooKeeper().getData(zkPath + "/" + name + "/cur_server", false, null);
-      if (value != null && uuid.equals(new String(value))) {
+      TaskItemRecord record = this.readTaskItem(zkPath + "/" + name);
+      String value = record.getCurrentServer();
+      if (value != null && uuid.equals(value)) {
         TaskItemDefine item = new TaskItemDefine();
         item.setTaskItemId(name);
-        byte[] parameterValue = this.getZooKeeper().getData(zkPath + "/" + name + "/parameter", false, null);
-        if (parameterValue != null) {
-          item.setParameter(new String(parameterValue));
+        long[] range = ScheduleUtil.parseTaskItemRange(name);
+        if (range != null) {
+          item.setRangeStart(range[0]);
+          item.setRangeEnd(range[1]);
+        }
+        if (record.getParameter() != null) {
+          item.setParameter(record.getParameter());
         }
         result.add(item);
 
-      } else if (value != null && !uuid.equals(new String(value))) {
-        log.trace(" current uid=" + uuid + " , zk cur_server uid=" + new String(value));
+      } else if (value != null && !uuid.equals(value)) {
+        log.trace(" current uid=" + uuid + " , zk cur_server uid=" + value);
       } else {
         log.trace(" current uid=" + uuid);
       }
@@ -473,27 +575,149 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
   }
 
   public void releaseDealTaskItem(String taskType, String uuid) throws Exception {
+    this.retryOnBadVersion(taskType, () -> {
+      this.doReleaseDealTaskItem(taskType, uuid);
+      return null;
+    });
+  }
+
+  private void doReleaseDealTaskItem(String taskType, String uuid) throws Exception {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_TaskItem;
-    boolean isModify = false;
+    List<Op> ops = new ArrayList<>();
+    boolean isCommitted = false;
+    try {
+      List<String> taskItems = this.cache.getChildren(zkPath);
+      this.prefetchTaskItems(zkPath, taskItems);
+      for (String name : taskItems) {
+        TaskItemRecord record = this.readTaskItem(zkPath + "/" + name);
+        if (record.getRequestServer() != null && uuid.equals(record.getCurrentServer())) {
+          this.addAssignOps(ops, zkPath + "/" + name, record, record.getRequestServer(), null);
+          if (ops.size() >= MAX_OPS_OF_ONE_MULTI) {
+            this.multi(ops);
+            isCommitted = true;
+          }
+        }
+      }
+      if (ops.size() > 0 || isCommitted) { //设置需要所有的服务器重新装载任务
+        ops.add(this.reloadTaskItemFlagOp(taskType));
+        this.multi(ops);
+        isCommitted = false;
+      }
+    } finally {
+      if (isCommitted) { //部分事务已经提交，仍然需要所有的服务器重新装载任务
+        this.updateReloadTaskItemFlag(taskType);
+      }
+    }
+  }
+
+  /**
+   * 把旧格式的任务项迁移为单节点紧凑格式，返回迁移的任务项数量
+   * 1、先把根节点的数据版本改为当前的程序版本，旧版本的程序不能再启动，之后新建的任务项都使用紧凑格式
+   * 2、每个任务项的数据写入任务项节点并删除子节点，按读取时的版本在同一个事务中提交，期间被修改过时抛出异常，再次调用即可
+   * 3、旧版本的程序不能读取紧凑格式的任务项，还有旧版本的调度服务器注册时拒绝迁移，除非force为true
+   * @param force 不检查旧版本的调度服务器，强制迁移
+   */
+  public int migrateTaskItemLayout(boolean force) throws Exception {
+    if (!force) {
+      List<String> oldServers = this.loadOldVersionScheduleServers();
+      if (oldServers.size() > 0) {
+        throw new Exception("还有" + oldServers.size() + "个旧版本的调度服务器，请先停止或者升级：" + oldServers);
+      }
+    }
+    this.getZooKeeper().setData(this.zkManager.getRootPath(), Version.getVersion().getBytes(), -1);
+    int result = 0;
+    try {
+      for (String baseTaskType : this.getZooKeeper().getChildren(this.PATH_BaseTaskType, false)) {
+        for (String taskType : this.getZooKeeper().getChildren(this.PATH_BaseTaskType + "/" + baseTaskType, false)) {
+          String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_TaskItem;
+          if (this.getZooKeeper().exists(zkPath, false) != null) {
+            result = result + this.migrateTaskItemLayout(zkPath);
+          }
+        }
+      }
+    } finally {
+      this.cache.clear();
+    }
+    log.info("迁移为紧凑格式的任务项数量：" + result);
+    return result;
+  }
+
+  /**
+   * 所有任务类型中注册时的程序版本不支持紧凑格式任务项的调度服务器
+   */
+  private List<String> loadOldVersionScheduleServers() throws Exception {
+    List<String> serverPaths = new ArrayList<>();
+    for (String baseTaskType : this.getZooKeeper().getChildren(this.PATH_BaseTaskType, false)) {
+      for (String taskType : this.getZooKeeper().getChildren(this.PATH_BaseTaskType + "/" + baseTaskType, false)) {
+        String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_Server;
+        if (this.getZooKeeper().exists(zkPath, false) == null) {
+          continue;
+        }
+        for (String name : this.getZooKeeper().getChildren(zkPath, false)) {
+          serverPaths.add(zkPath + "/" + name);
+        }
+      }
+    }
+    List<String> result = new ArrayList<>();
+    for (Map.Entry<String, byte[]> entry : ZKTools.getDataAll(this.getZooKeeper(), serverPaths).entrySet()) {
+      String programVersion = null;
+      if (entry.getValue() != null) {
+        programVersion = this.gson.fromJson(new String(entry.getValue()), ScheduleServer.class).getProgramVersion();
+      }
+      if (!Version.isCompactTaskItem(programVersion)) {
+        result.add(entry.getKey().substring(entry.getKey().lastIndexOf("/") + 1));
+      }
+    }
+    return result;
+  }
+
+  private int migrateTaskItemLayout(String zkPath) throws Exception {
+    List<String> itemPaths = new ArrayList<>();
     for (String name : this.getZooKeeper().getChildren(zkPath, false)) {
-      byte[] curServerValue = this.getZooKeeper().getData(zkPath + "/" + name + "/cur_server", false, null);
-      byte[] reqServerValue = this.getZooKeeper().getData(zkPath + "/" + name + "/req_server", false, null);
-      if (reqServerValue != null && curServerValue != null && uuid.equals(new String(curServerValue))) {
-        this.getZooKeeper().setData(zkPath + "/" + name + "/cur_server", reqServerValue, -1);
-        this.getZooKeeper().setData(zkPath + "/" + name + "/req_server", null, -1);
-        isModify = true;
+      itemPaths.add(zkPath + "/" + name);
+    }
+    Map<String, Stat> itemStats = new HashMap<>();
+    Map<String, byte[]> items = ZKTools.getDataAll(this.getZooKeeper(), itemPaths, null, itemStats);
+    List<String> oldItemPaths = new ArrayList<>();
+    List<String> paths = new ArrayList<>();
+    for (String itemPath : itemPaths) {
+      if (items.containsKey(itemPath) && items.get(itemPath) == null) {
+        oldItemPaths.add(itemPath);
+        for (String nodeName : TaskItemRecord.NODE_NAMES) {
+          paths.add(itemPath + "/" + nodeName);
+        }
       }
     }
-    if (isModify) { //设置需要所有的服务器重新装载任务
-      this.updateReloadTaskItemFlag(taskType);
+    Map<String, Stat> stats = new HashMap<>();
+    Map<String, byte[]> values = ZKTools.getDataAll(this.getZooKeeper(), paths, null, stats);
+    List<Op> ops = new ArrayList<>();
+    for (String itemPath : oldItemPaths) {
+      TaskItemRecord record = new TaskItemRecord();
+      record.setCurrentServer(TaskItemRecord.asString(values.get(itemPath + "/cur_server")));
+      record.setRequestServer(TaskItemRecord.asString(values.get(itemPath + "/req_server")));
+      record.setSts(TaskItemRecord.asString(values.get(itemPath + "/sts")));
+      record.setParameter(TaskItemRecord.asString(values.get(itemPath + "/parameter")));
+      record.setDealDesc(TaskItemRecord.asString(values.get(itemPath + "/deal_desc")));
+      ops.add(Op.setData(itemPath, record.toBytes(), itemStats.get(itemPath).getVersion()));
+      for (String nodeName : TaskItemRecord.NODE_NAMES) {
+        Stat stat = stats.get(itemPath + "/" + nodeName);
+        if (stat != null) {
+          ops.add(Op.delete(itemPath + "/" + nodeName, stat.getVersion()));
+        }
+      }
+      if (ops.size() >= MAX_OPS_OF_ONE_MULTI) {
+        this.multi(ops);
+      }
     }
+    this.multi(ops);
+    return oldItemPaths.size();
   }
 
   public int queryTaskItemCount(String taskType) throws Exception {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_TaskItem;
-    return this.getZooKeeper().getChildren(zkPath, false).size();
+    return this.cache.getChildren(zkPath).size();
   }
 
   public void clearExpireTaskTypeRunningInfo(String baseTaskType, String serverUUID, double expireDateInternal)
@@ -503,6 +727,7 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
       Stat stat = this.getZooKeeper().exists(zkPath, false);
       if (stat == null || getSystemTime() - stat.getMtime() > (long) (expireDateInternal * 24 * 3600 * 1000)) {
         ZKTools.deleteTree(this.getZooKeeper(), this.PATH_BaseTaskType + "/" + baseTaskType + "/" + name);
+        this.cache.clear();
       }
     }
   }
@@ -512,18 +737,21 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType
                     + "/" + taskType + "/" + this.PATH_Server;
-    if (this.getZooKeeper().exists(zkPath, false) == null) {
+    if (this.cache.exists(zkPath) == null) {
       String tempPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType;
-      if (this.getZooKeeper().exists(tempPath, false) == null) {
+      if (this.cache.exists(tempPath) == null) {
         this.getZooKeeper().create(tempPath, null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
+        this.cache.invalidate(tempPath);
       }
       this.getZooKeeper().create(zkPath, null, this.zkManager.getAcl(), CreateMode.PERSISTENT);
+      this.cache.invalidate(zkPath);
     }
-    for (String name : this.getZooKeeper().getChildren(zkPath, false)) {
+    for (String name : this.cache.getChildren(zkPath)) {
       try {
-        Stat stat = this.getZooKeeper().exists(zkPath + "/" + name, false);
+        Stat stat = this.cache.exists(zkPath + "/" + name);
         if (getSystemTime() - stat.getMtime() > expireTime) {
           ZKTools.deleteTree(this.getZooKeeper(), zkPath + "/" + name);
+          this.cache.invalidate(zkPath + "/" + name);
           result++;
         }
       } catch (Exception e) {
@@ -539,14 +767,21 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     String taskType,
     List<String> serverList
   ) throws Exception {
+    return this.retryOnBadVersion(taskType, () -> this.doClearTaskItem(taskType, serverList));
+  }
+
+  private int doClearTaskItem(String taskType, List<String> serverList) throws Exception {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_TaskItem;
 
     int result = 0;
-    for (String name : this.getZooKeeper().getChildren(zkPath, false)) {
-      byte[] curServerValue = this.getZooKeeper().getData(zkPath + "/" + name + "/cur_server", false, null);
-      if (curServerValue != null) {
-        String curServer = new String(curServerValue);
+    List<Op> ops = new ArrayList<>();
+    List<String> taskItems = this.cache.getChildren(zkPath);
+    this.prefetchTaskItems(zkPath, taskItems);
+    for (String name : taskItems) {
+      TaskItemRecord record = this.readTaskItem(zkPath + "/" + name);
+      if (record.getCurrentServer() != null) {
+        String curServer = record.getCurrentServer();
         boolean isFind = false;
         for (String server : serverList) {
           if (curServer.equals(server)) {
@@ -555,23 +790,27 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
           }
         }
         if (!isFind) {
-          this.getZooKeeper().setData(zkPath + "/" + name + "/cur_server", null, -1);
+          this.addAssignOps(ops, zkPath + "/" + name, record, null, record.getRequestServer());
+          if (ops.size() >= MAX_OPS_OF_ONE_MULTI) {
+            this.multi(ops);
+          }
           result = result + 1;
         }
       } else {
         result = result + 1;
       }
     }
+    this.multi(ops);
     return result;
   }
 
   public List<String> loadScheduleServerNames(String taskType) throws Exception {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_Server;
-    if (this.getZooKeeper().exists(zkPath, false) == null) {
+    if (this.cache.exists(zkPath) == null) {
       return new ArrayList<>();
     }
-    List<String> serverList = this.getZooKeeper().getChildren(zkPath, false);
+    List<String> serverList = this.cache.getChildren(zkPath);
     Collections.sort(serverList, (u1,u2)->u1.substring(u1.lastIndexOf("$") + 1).compareTo(u2.substring(u2.lastIndexOf("$") + 1)));
     return serverList;
   }
@@ -587,9 +826,14 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     }
     List<String> serverList = this.getZooKeeper().getChildren(zkPath, false);
     Collections.sort(serverList, (u1,u2)->u1.substring(u1.lastIndexOf("$") + 1).compareTo(u2.substring(u2.lastIndexOf("$") + 1)));
+    List<String> paths = new ArrayList<>();
+    for (String name : serverList) {
+      paths.add(zkPath + "/" + name);
+    }
+    Map<String, byte[]> values = ZKTools.getDataAll(this.getZooKeeper(), paths);
     for (String name : serverList) {
       try {
-        String valueString = new String(this.getZooKeeper().getData(zkPath + "/" + name, false, null));
+        String valueString = new String(values.get(zkPath + "/" + name));
         ScheduleServer server = this.gson.fromJson(valueString, ScheduleServer.class);
         server.setCenterServerTime(new Timestamp(this.getSystemTime()));
         result.add(server);
@@ -603,17 +847,31 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
   public List<ScheduleServer> selectScheduleServerByManagerFactoryUUID(String factoryUUID)
     throws Exception {
     List<ScheduleServer> result = new ArrayList<>();
+    // 逐层读取，每一层的请求一起发送
+    List<String> baseTaskTypePaths = new ArrayList<>();
     for (String baseTaskType : this.getZooKeeper().getChildren(this.PATH_BaseTaskType, false)) {
-      for (String taskType : this.getZooKeeper().getChildren(this.PATH_BaseTaskType + "/" + baseTaskType, false)) {
-        String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_Server;
-        for (String uuid : this.getZooKeeper().getChildren(zkPath, false)) {
-          String valueString = new String(this.getZooKeeper().getData(zkPath + "/" + uuid, false, null));
-          ScheduleServer server = this.gson.fromJson(valueString, ScheduleServer.class);
-          server.setCenterServerTime(new Timestamp(this.getSystemTime()));
-          if (server.getManagerFactoryUUID().equals(factoryUUID)) {
-            result.add(server);
-          }
-        }
+      baseTaskTypePaths.add(this.PATH_BaseTaskType + "/" + baseTaskType);
+    }
+    List<String> serverPaths = new ArrayList<>();
+    for (Map.Entry<String, List<String>> entry : ZKTools.getChildrenAll(this.getZooKeeper(), baseTaskTypePaths).entrySet()) {
+      for (String taskType : entry.getValue()) {
+        serverPaths.add(entry.getKey() + "/" + taskType + "/" + this.PATH_Server);
+      }
+    }
+    List<String> uuidPaths = new ArrayList<>();
+    for (Map.Entry<String, List<String>> entry : ZKTools.getChildrenAll(this.getZooKeeper(), serverPaths).entrySet()) {
+      for (String uuid : entry.getValue()) {
+        uuidPaths.add(entry.getKey() + "/" + uuid);
+      }
+    }
+    for (byte[] value : ZKTools.getDataAll(this.getZooKeeper(), uuidPaths).values()) {
+      if (value == null) {
+        continue;
+      }
+      ScheduleServer server = this.gson.fromJson(new String(value), ScheduleServer.class);
+      server.setCenterServerTime(new Timestamp(this.getSystemTime()));
+      if (server.getManagerFactoryUUID().equals(factoryUUID)) {
+        result.add(server);
       }
     }
     Collections.sort(result, (u1,u2)->{
@@ -664,41 +922,62 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
       //在服务器动态调整的时候，可能出现服务器列表为空的清空
       return;
     }
+    this.retryOnBadVersion(taskType, () -> {
+      this.doAssignTaskItem(taskType, currentUuid, taskServerList);
+      return null;
+    });
+  }
+
+  private void doAssignTaskItem(String taskType, String currentUuid, List<String> taskServerList) throws Exception {
     String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_TaskItem;
-    List<String> children = this.getZooKeeper().getChildren(zkPath, false);
+    List<String> children = this.cache.getChildren(zkPath);
     Collections.sort(children, this.comparator);
+    this.prefetchTaskItems(zkPath, children);
     int unModifyCount = 0;
     int[] taskNums = ScheduleUtil.assignTaskNumber(taskServerList.size(), children.size());
     int point = 0;
     int count = 0;
     String NO_SERVER_DEAL = "没有分配到服务器";
-    for (int i = 0; i < children.size(); i++) {
-      String name = children.get(i);
-      if (point < taskServerList.size() && i >= count + taskNums[point]) {
-        count = count + taskNums[point];
-        point = point + 1;
-      }
-      String serverName = NO_SERVER_DEAL;
-      if (point < taskServerList.size()) {
-        serverName = taskServerList.get(point);
-      }
-      byte[] curServerValue = this.getZooKeeper().getData(zkPath + "/" + name + "/cur_server", false, null);
-      byte[] reqServerValue = this.getZooKeeper().getData(zkPath + "/" + name + "/req_server", false, null);
-
-      if (curServerValue == null || new String(curServerValue).equals(NO_SERVER_DEAL)) {
-        this.getZooKeeper().setData(zkPath + "/" + name + "/cur_server", serverName.getBytes(), -1);
-        this.getZooKeeper().setData(zkPath + "/" + name + "/req_server", null, -1);
-      } else if (new String(curServerValue).equals(serverName) && reqServerValue == null) {
-        //不需要做任何事情
-        unModifyCount = unModifyCount + 1;
-      } else {
-        this.getZooKeeper().setData(zkPath + "/" + name + "/req_server", serverName.getBytes(), -1);
+    List<Op> ops = new ArrayList<>();
+    boolean isCommitted = false;
+    try {
+      for (int i = 0; i < children.size(); i++) {
+        String name = children.get(i);
+        if (point < taskServerList.size() && i >= count + taskNums[point]) {
+          count = count + taskNums[point];
+          point = point + 1;
+        }
+        String serverName = NO_SERVER_DEAL;
+        if (point < taskServerList.size()) {
+          serverName = taskServerList.get(point);
+        }
+        TaskItemRecord record = this.readTaskItem(zkPath + "/" + name);
+        String curServerValue = record.getCurrentServer();
+
+        if (curServerValue == null || curServerValue.equals(NO_SERVER_DEAL)) {
+          this.addAssignOps(ops, zkPath + "/" + name, record, serverName, null);
+        } else if (curServerValue.equals(serverName) && record.getRequestServer() == null) {
+          //不需要做任何事情
+          unModifyCount = unModifyCount + 1;
+        } else {
+          this.addAssignOps(ops, zkPath + "/" + name, record, curServerValue, serverName);
+        }
+        if (ops.size() >= MAX_OPS_OF_ONE_MULTI) {
+          this.multi(ops);
+          isCommitted = true;
+        }
+      }
+      if (unModifyCount < children.size()) { //设置需要所有的服务器重新装载任务
+        log.info("设置需要所有的服务器重新装载任务:updateReloadTaskItemFlag......" + taskType + "  ,currentUuid " + currentUuid);
+        ops.add(this.reloadTaskItemFlagOp(taskType));
+        this.multi(ops);
+        isCommitted = false;
+      }
+    } finally {
+      if (isCommitted) { //部分事务已经提交，仍然需要所有的服务器重新装载任务
+        this.updateReloadTaskItemFlag(taskType);
       }
-    }
-    if (unModifyCount < children.size()) { //设置需要所有的服务器重新装载任务
-      log.info("设置需要所有的服务器重新装载任务:updateReloadTaskItemFlag......" + taskType + "  ,currentUuid " + currentUuid);
-      this.updateReloadTaskItemFlag(taskType);
     }
   }
 
@@ -721,8 +1000,9 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     server.setUuid(realPath.substring(realPath.lastIndexOf("/") + 1));
     Timestamp heartBeatTime = new Timestamp(this.getSystemTime());
     server.setHeartBeatTime(heartBeatTime);
+    server.setProgramVersion(Version.getVersion());
     String valueString = this.gson.toJson(server);
-    this.getZooKeeper().setData(realPath, valueString.getBytes(), -1);
+    this.setData(realPath, valueString.getBytes());
     server.setRegister(true);
   }
 
@@ -739,7 +1019,7 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
       server.setVersion(server.getVersion() + 1);
       String valueString = this.gson.toJson(server);
       try {
-        this.getZooKeeper().setData(zkPath, valueString.getBytes(), -1);
+        this.setData(zkPath, valueString.getBytes());
       } catch (Exception e) {
         //恢复上次的心跳时间
         server.setHeartBeatTime(oldHeartBeatTime);
@@ -755,6 +1035,7 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_Server + "/" + serverUUID;
     if (this.getZooKeeper().exists(zkPath, false) != null) {
       this.getZooKeeper().delete(zkPath, -1);
+      this.cache.invalidate(zkPath);
     }
   }
 
@@ -770,6 +1051,153 @@ public class ScheduleDataManager4ZK implements IScheduleDataManager {
     this.updateBaseTaskType(taskType);
   }
 
+  /**
+   * 一次性读取任务项的数据放入本地缓存，旧格式的任务项节点没有数据，再一次性读取分配用到的子节点
+   */
+  private void prefetchTaskItems(String zkPath, List<String> taskItems) throws Exception {
+    List<String> itemPaths = new ArrayList<>(taskItems.size());
+    for (String name : taskItems) {
+      itemPaths.add(zkPath + "/" + name);
+    }
+    this.cache.prefetch(itemPaths);
+    List<String> paths = new ArrayList<>();
+    for (String itemPath : itemPaths) {
+      Stat stat = this.cache.exists(itemPath);
+      if (stat != null && stat.getDataLength() == 0) {
+        paths.add(itemPath + "/cur_server");
+        paths.add(itemPath + "/req_server");
+        paths.add(itemPath + "/parameter");
+      }
+    }
+    this.cache.prefetch(paths);
+  }
+
+  /**
+   * 从本地缓存读取任务项的分配信息，旧格式只读取 cur_server、req_server、parameter
+   */
+  private TaskItemRecord readTaskItem(String zkTaskItemPath) throws Exception {
+    Stat stat = new Stat();
+    byte[] data = this.cache.getData(zkTaskItemPath, stat);
+    if (data != null) {
+      return TaskItemRecord.parse(data, stat.getVersion());
+    }
+    TaskItemRecord record = new TaskItemRecord();
+    Stat curStat = new Stat();
+    Stat reqStat = new Stat();
+    record.setCurrentServer(TaskItemRecord.asString(this.cache.getData(zkTaskItemPath + "/cur_server", curStat)));
+    record.setRequestServer(TaskItemRecord.asString(this.cache.getData(zkTaskItemPath + "/req_server", reqStat)));
+    record.setParameter(TaskItemRecord.asString(this.cache.getData(zkTaskItemPath + "/parameter")));
+    record.setCurrentServerVersion(curStat.getVersion());
+    record.setRequestServerVersion(reqStat.getVersion());
+    return record;
+  }
+
+  /**
+   * 修改任务项当前的服务器和申请的服务器，按读取时的版本修改，期间被修改过时事务失败
+   * 紧凑格式整体覆盖任务项节点，旧格式只修改有变化的子节点
+   */
+  private void addAssignOps(List<Op> ops, String zkTaskItemPath, TaskItemRecord record, String currentServer, String requestServer) {
+    if (record.isCompact()) {
+      record.setCurrentServer(currentServer);
+      record.setRequestServer(requestServer);
+      ops.add(Op.setData(zkTaskItemPath, record.toBytes(), record.getVersion()));
+      return;
+    }
+    if (!StringUtils.equals(currentServer, record.getCurrentServer())) {
+      ops.add(Op.setData(zkTaskItemPath + "/cur_server", TaskItemRecord.asBytes(currentServer), record.getCurrentServerVersion()));
+    }
+    if (!StringUtils.equals(requestServer, record.getRequestServer())) {
+      ops.add(Op.setData(zkTaskItemPath + "/req_server", TaskItemRecord.asBytes(requestServer), record.getRequestServerVersion()));
+    }
+  }
+
+  /**
+   * 根节点的数据版本是否已经使用紧凑格式的任务项，迁移可能由其它服务器完成，每次都读取
+   */
+  private boolean isCompactTaskItemLayout() throws Exception {
+    byte[] value = this.getZooKeeper().getData(this.zkManager.getRootPath(), false, null);
+    return value != null && Version.isCompactTaskItem(new String(value));
+  }
+
+  /**
+   * 设置重新装载任务项标志的操作，与任务项的修改放在同一个事务中提交
+   */
+  private Op reloadTaskItemFlagOp(String taskType) {
+    String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
+    String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_Server;
+    return Op.setData(zkPath, "reload=true".getBytes(), -1);
+  }
+
+  /**
+   * 在一个事务中提交ops，全部成功或者全部失败，节点版本已经变化时抛出 KeeperException.BadVersionException
+   * 提交后清空ops，不论成功与否都作废相关节点的本地缓存
+   */
+  private void multi(List<Op> ops) throws Exception {
+    if (ops.isEmpty()) {
+      return;
+    }
+    try {
+      this.getZooKeeper().multi(ops);
+    } finally {
+      for (Op op : ops) {
+        this.cache.invalidate(op.getPath());
+      }
+      ops.clear();
+    }
+  }
+
+  /**
+   * 任务项的修改按读取时的版本提交，本地缓存落后于Zookeeper或者被其它服务器修改时抛出 KeeperException.BadVersionException
+   * 此时作废任务项的本地缓存，重新读取后再执行，超过重试次数后抛出异常
+   * 已经提交的部分事务由重新执行时按最新的数据继续处理
+   */
+  private <V> V retryOnBadVersion(String taskType, Callable<V> action) throws Exception {
+    for (int retryTimes = 1; ; retryTimes++) {
+      try {
+        return action.call();
+      } catch (KeeperException.BadVersionException ex) {
+        if (retryTimes > MAX_RETRY_OF_BAD_VERSION) {
+          throw ex;
+        }
+        log.warn(taskType + " 任务项已经被修改，重新读取后第" + retryTimes + "次重试：" + ex.getPath());
+        this.invalidateTaskItems(taskType);
+      }
+    }
+  }
+
+  /**
+   * 作废任务类型下所有任务项的本地缓存，包括旧格式的子节点，子节点列表不经过缓存读取
+   */
+  private void invalidateTaskItems(String taskType) throws Exception {
+    String baseTaskType = ScheduleUtil.splitBaseTaskTypeFromTaskType(taskType);
+    String zkPath = this.PATH_BaseTaskType + "/" + baseTaskType + "/" + taskType + "/" + this.PATH_TaskItem;
+    this.cache.invalidate(zkPath);
+    for (String name : this.getZooKeeper().getChildren(zkPath, false)) {
+      this.cache.invalidate(zkPath + "/" + name);
+      for (String nodeName : TaskItemRecord.NODE_NAMES) {
+        this.cache.invalidate(zkPath + "/" + name + "/" + nodeName);
+      }
+    }
+  }
+
+  /**
+   * 修改节点数据并作废本地缓存
+   */
+  private void setData(String zkPath, byte[] data) throws Exception {
+    this.setData(zkPath, data, -1);
+  }
+
+  /**
+   * 按版本修改节点数据并作废本地缓存，版本为-1时不检查版本
+   */
+  private void setData(String zkPath, byte[] data, int version) throws Exception {
+    try {
+      this.getZooKeeper().setData(zkPath, data, version);
+    } finally {
+      this.cache.invalidate(zkPath);
+    }
+  }
+
   public long getSystemTime() {
     return this.zkBaseTime + (System.currentTimeMillis() - this.localBaseTime);
   }
@@ -13,6 +13,7 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -129,8 +130,15 @@ public class ScheduleStrategyDataManager4ZK {
     List<ScheduleStrategy> result = new ArrayList<>();
     List<String> names = this.getZooKeeper().getChildren(zkPath, false);
     Collections.sort(names);
+    List<String> paths = new ArrayList<>();
     for (String name : names) {
-      result.add(this.loadStrategy(name));
+      paths.add(zkPath + "/" + name);
+    }
+    Map<String, byte[]> values = ZKTools.getDataAll(this.getZooKeeper(), paths);
+    for (String path : paths) {
+      if (values.containsKey(path)) {
+        result.add(this.gson.fromJson(new String(values.get(path)), ScheduleStrategy.class));
+      }
     }
     return result;
   }
@@ -203,25 +211,53 @@ public class ScheduleStrategyDataManager4ZK {
     String zkPath = this.PATH_Strategy + "/" + strategyName + "/" + managerFactoryUUID;
     ScheduleStrategyRuntime result = null;
     if (this.getZooKeeper().exists(zkPath, false) != null) {
-      byte[] value = this.getZooKeeper().getData(zkPath, false, null);
-      if (value != null) {
-        String valueString = new String(value);
-        result = this.gson.fromJson(valueString, ScheduleStrategyRuntime.class);
-        if (null == result) {
-          throw new Exception("gson 反序列化异常,对象为null");
-        }
-        if (null == result.getStrategyName()) {
-          throw new Exception("gson 反序列化异常,策略名字为null");
-        }
-        if (null == result.getUuid()) {
-          throw new Exception("gson 反序列化异常,uuid为null");
-        }
-      } else {
-        result = new ScheduleStrategyRuntime();
-        result.setStrategyName(strategyName);
-        result.setUuid(managerFactoryUUID);
-        result.setRequestNum(0);
-        result.setMessage("");
+      result = this.parseScheduleStrategyRuntime(strategyName, managerFactoryUUID, this.getZooKeeper().getData(zkPath, false, null));
+    }
+    return result;
+  }
+
+  /**
+   * 解析节点中的调度策略运行状态，节点数据为空时返回初始状态
+   */
+  private ScheduleStrategyRuntime parseScheduleStrategyRuntime(String strategyName, String managerFactoryUUID, byte[] value) throws Exception {
+    ScheduleStrategyRuntime result;
+    if (value != null) {
+      String valueString = new String(value);
+      result = this.gson.fromJson(valueString, ScheduleStrategyRuntime.class);
+      if (null == result) {
+        throw new Exception("gson 反序列化异常,对象为null");
+      }
+      if (null == result.getStrategyName()) {
+        throw new Exception("gson 反序列化异常,策略名字为null");
+      }
+      if (null == result.getUuid()) {
+        throw new Exception("gson 反序列化异常,uuid为null");
+      }
+    } else {
+      result = new ScheduleStrategyRuntime();
+      result.setStrategyName(strategyName);
+      result.setUuid(managerFactoryUUID);
+      result.setRequestNum(0);
+      result.setMessage("");
+    }
+    return result;
+  }
+
+  /**
+   * 一次性读取多个调度策略运行状态节点，不存在的节点被忽略
+   * @param strategyName 策略名称
+   * @param uuidList 任务管理器UUID
+   */
+  private List<ScheduleStrategyRuntime> loadScheduleStrategyRuntimes(String strategyName, List<String> uuidList) throws Exception {
+    List<String> paths = new ArrayList<>();
+    for (String uuid : uuidList) {
+      paths.add(this.PATH_Strategy + "/" + strategyName + "/" + uuid);
+    }
+    Map<String, byte[]> values = ZKTools.getDataAll(this.getZooKeeper(), paths);
+    List<ScheduleStrategyRuntime> result = new ArrayList<>();
+    for (int i = 0; i < uuidList.size(); i++) {
+      if (values.containsKey(paths.get(i))) {
+        result.add(this.parseScheduleStrategyRuntime(strategyName, uuidList.get(i), values.get(paths.get(i))));
       }
     }
     return result;
@@ -234,9 +270,14 @@ public class ScheduleStrategyDataManager4ZK {
   public List<ScheduleStrategyRuntime> loadAllScheduleStrategyRuntime() throws Exception {
     List<ScheduleStrategyRuntime> result = new ArrayList<>();
     String zkPath = this.PATH_Strategy;
-    for (String taskType : this.getZooKeeper().getChildren(zkPath, false)) {
-      for (String uuid : this.getZooKeeper().getChildren(zkPath + "/" + taskType, false)) {
-        result.add(loadScheduleStrategyRuntime(taskType, uuid));
+    List<String> strategyPaths = new ArrayList<>();
+    for (String strategyName : this.getZooKeeper().getChildren(zkPath, false)) {
+      strategyPaths.add(zkPath + "/" + strategyName);
+    }
+    Map<String, List<String>> children = ZKTools.getChildrenAll(this.getZooKeeper(), strategyPaths);
+    for (String strategyPath : strategyPaths) {
+      if (children.containsKey(strategyPath)) {
+        result.addAll(this.loadScheduleStrategyRuntimes(strategyPath.substring(zkPath.length() + 1), children.get(strategyPath)));
       }
     }
     return result;
@@ -253,9 +294,14 @@ public class ScheduleStrategyDataManager4ZK {
     String zkPath = this.PATH_Strategy;
     List<String> strategyNameList = this.getZooKeeper().getChildren(zkPath, false);
     Collections.sort(strategyNameList);
+    List<String> paths = new ArrayList<>();
     for (String strategyName : strategyNameList) {
-      if (this.getZooKeeper().exists(zkPath + "/" + strategyName + "/" + managerFactoryUUID, false) != null) {
-        result.add(loadScheduleStrategyRuntime(strategyName, managerFactoryUUID));
+      paths.add(zkPath + "/" + strategyName + "/" + managerFactoryUUID);
+    }
+    Map<String, byte[]> values = ZKTools.getDataAll(this.getZooKeeper(), paths);
+    for (int i = 0; i < strategyNameList.size(); i++) {
+      if (values.containsKey(paths.get(i))) {
+        result.add(this.parseScheduleStrategyRuntime(strategyNameList.get(i), managerFactoryUUID, values.get(paths.get(i))));
       }
     }
     return result;
@@ -275,9 +321,7 @@ public class ScheduleStrategyDataManager4ZK {
     }
     List<String> uuidList = this.getZooKeeper().getChildren(zkPath + "/" + strategyName, false);
     Collections.sort(uuidList, (u1, u2)->u1.substring(u1.lastIndexOf("$") + 1).compareTo(u2.substring(u2.lastIndexOf("$") + 1)));
-    for (String uuid : uuidList) {
-      result.add(loadScheduleStrategyRuntime(strategyName, uuid));
-    }
+    result.addAll(this.loadScheduleStrategyRuntimes(strategyName, uuidList));
     return result;
   }
 
@@ -302,6 +346,30 @@ public class ScheduleStrategyDataManager4ZK {
     this.getZooKeeper().setData(zkPath, valueString.getBytes(), -1);
   }
 
+  /**
+   * 更新当前机器最多可以承担的任务数量
+   * @param strategyName 策略名称
+   * @param managerFactoryUUID 任务管理器UUID
+   * @param maxNum 最多可以承担的任务数量，null表示不限制
+   */
+  public void updateStrategyRuntimeMaxNum(String strategyName, String managerFactoryUUID, Integer maxNum)
+    throws Exception {
+    String zkPath = this.PATH_Strategy + "/" + strategyName + "/" + managerFactoryUUID;
+    ScheduleStrategyRuntime result;
+    if (this.getZooKeeper().exists(zkPath, false) != null) {
+      result = this.loadScheduleStrategyRuntime(strategyName, managerFactoryUUID);
+    } else {
+      result = new ScheduleStrategyRuntime();
+      result.setStrategyName(strategyName);
+      result.setUuid(managerFactoryUUID);
+      result.setRequestNum(0);
+      result.setMessage("");
+    }
+    result.setMaxNum(maxNum);
+    String valueString = this.gson.toJson(result);
+    this.getZooKeeper().setData(zkPath, valueString.getBytes(), -1);
+  }
+
   /**
    * 更新策略调度时的错误信息
    * @param strategyName 策略名称
@@ -363,10 +431,18 @@ public class ScheduleStrategyDataManager4ZK {
     List<ManagerFactoryInfo> result = new ArrayList<>();
     List<String> names = this.getZooKeeper().getChildren(zkPath, false);
     Collections.sort(names, (o1, o2)->o1.substring(o1.lastIndexOf("$") + 1).compareTo(o2.substring(o2.lastIndexOf("$") + 1)));
+    List<String> paths = new ArrayList<>();
     for (String name : names) {
+      paths.add(zkPath + "/" + name);
+    }
+    Map<String, byte[]> values = ZKTools.getDataAll(this.getZooKeeper(), paths);
+    for (String name : names) {
+      if (!values.containsKey(zkPath + "/" + name)) {
+        continue;
+      }
       ManagerFactoryInfo info = new ManagerFactoryInfo();
       info.setUuid(name);
-      byte[] value = this.getZooKeeper().getData(zkPath + "/" + name, false, null);
+      byte[] value = values.get(zkPath + "/" + name);
       if (value == null) {
         info.setStart(true);
       } else {
@@ -0,0 +1,63 @@
+package cn.ictgu.zk;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import lombok.Data;
+
+/**
+ * 任务项在Zookeeper中保存的信息，兼容两种存储格式
+ * 1、紧凑格式：任务项节点本身保存所有字段，修改时按任务项节点的版本整体覆盖
+ * 2、旧格式：任务项节点没有数据，cur_server、req_server、sts、parameter、deal_desc 各一个子节点，修改时按子节点的版本单独修改
+ * 紧凑格式的任务项节点数据不会为null，据此区分两种格式，迁移期间两种格式可以同时存在
+ */
+@Data
+class TaskItemRecord {
+
+  private static final Gson GSON = new Gson();
+
+  // 旧格式中每个任务项的子节点
+  static final String[] NODE_NAMES = {"cur_server", "req_server", "sts", "parameter", "deal_desc"};
+
+  @SerializedName("c")
+  private String currentServer;
+
+  @SerializedName("r")
+  private String requestServer;
+
+  @SerializedName("s")
+  private String sts;
+
+  @SerializedName("p")
+  private String parameter;
+
+  @SerializedName("d")
+  private String dealDesc;
+
+  // 以下字段不保存，记录读取时的格式和版本，用于按版本修改
+  private transient boolean compact;
+
+  private transient int version;
+
+  private transient int currentServerVersion;
+
+  private transient int requestServerVersion;
+
+  static TaskItemRecord parse(byte[] data, int version) {
+    TaskItemRecord record = GSON.fromJson(new String(data), TaskItemRecord.class);
+    record.setCompact(true);
+    record.setVersion(version);
+    return record;
+  }
+
+  byte[] toBytes() {
+    return GSON.toJson(this).getBytes();
+  }
+
+  static String asString(byte[] value) {
+    return value == null ? null : new String(value);
+  }
+
+  static byte[] asBytes(String value) {
+    return value == null ? null : value.getBytes();
+  }
+}
@@ -5,7 +5,10 @@ package cn.ictgu.zk;
  * Created by Silence on 2016/12/19.
  */
 class Version {
-  private final static String version = "AnySchedule-1.0.0";
+  private final static String version = "AnySchedule-1.1.0";
+
+  // 从这个数据版本开始，任务项使用单节点紧凑格式，之前的版本每个任务项6个节点
+  private final static String compactTaskItemVersion = "AnySchedule-1.1.0";
 
   static String getVersion() {
     return version;
@@ -14,4 +17,8 @@ class Version {
   static boolean isCompatible(String dataVersion) {
     return version.compareTo(dataVersion) >= 0;
   }
+
+  static boolean isCompactTaskItem(String dataVersion) {
+    return dataVersion != null && dataVersion.compareTo(compactTaskItemVersion) >= 0;
+  }
 }
\ No newline at end of file
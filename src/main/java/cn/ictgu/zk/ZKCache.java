@@ -0,0 +1,239 @@
+package cn.ictgu.zk;
+
+import lombok.extern.log4j.Log4j;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Zookeeper节点的本地缓存，读取时注册watch，节点变化时由watch事件作废对应的缓存
+ * 1、缓存子节点列表、节点数据和Stat，不存在的节点也会缓存，节点创建时作废
+ * 2、连接断开、会话过期或者重新建立连接后清空所有缓存
+ * 3、本机的写操作完成后调用invalidate，不等待watch事件，保证随后的读取能看到自己的修改
+ * 4、读取期间或者放入缓存时有缓存被作废，读到的结果只返回不缓存，避免旧数据覆盖作废
+ */
+@Log4j
+class ZKCache implements Watcher {
+
+  private final ZKManager zkManager;
+
+  private final ConcurrentHashMap<String, List<String>> childrenCache = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<String, NodeData> dataCache = new ConcurrentHashMap<>();
+
+  // 每次作废缓存时加1
+  private final AtomicLong epoch = new AtomicLong(0);
+
+  // 缓存对应的连接，连接重建后缓存中的watch已经失效
+  private volatile ZooKeeper zooKeeper;
+
+  ZKCache(ZKManager zkManager) {
+    this.zkManager = zkManager;
+  }
+
+  /**
+   * 子节点列表，节点不存在时抛出 KeeperException.NoNodeException，返回的列表可以修改
+   */
+  List<String> getChildren(String path) throws Exception {
+    ZooKeeper zk = this.getZooKeeper();
+    List<String> children = this.childrenCache.get(path);
+    if (children == null) {
+      long currentEpoch = this.epoch.get();
+      children = zk.getChildren(path, this);
+      if (this.epoch.get() == currentEpoch) {
+        this.childrenCache.put(path, children);
+        if (this.epoch.get() != currentEpoch) {
+          this.childrenCache.remove(path, children);
+        }
+      }
+    }
+    return new ArrayList<>(children);
+  }
+
+  /**
+   * 节点数据，节点不存在时抛出 KeeperException.NoNodeException
+   */
+  byte[] getData(String path) throws Exception {
+    NodeData nodeData = this.getNodeData(path);
+    if (nodeData.stat == null) {
+      throw new KeeperException.NoNodeException(path);
+    }
+    return nodeData.data;
+  }
+
+  /**
+   * 节点数据，同时把读到数据时的Stat复制到stat中，用于按版本修改
+   */
+  byte[] getData(String path, Stat stat) throws Exception {
+    NodeData nodeData = this.getNodeData(path);
+    if (nodeData.stat == null) {
+      throw new KeeperException.NoNodeException(path);
+    }
+    Stat source = nodeData.stat;
+    stat.setCzxid(source.getCzxid());
+    stat.setMzxid(source.getMzxid());
+    stat.setCtime(source.getCtime());
+    stat.setMtime(source.getMtime());
+    stat.setVersion(source.getVersion());
+    stat.setCversion(source.getCversion());
+    stat.setAversion(source.getAversion());
+    stat.setEphemeralOwner(source.getEphemeralOwner());
+    stat.setDataLength(source.getDataLength());
+    stat.setNumChildren(source.getNumChildren());
+    stat.setPzxid(source.getPzxid());
+    return nodeData.data;
+  }
+
+  /**
+   * 节点的Stat，节点不存在时返回null，返回的对象不能修改
+   */
+  Stat exists(String path) throws Exception {
+    return this.getNodeData(path).stat;
+  }
+
+  /**
+   * 用异步接口一次性读取没有缓存的节点，之后的getData、exists直接命中缓存
+   * 不存在的节点不缓存，由之后的同步读取处理
+   */
+  void prefetch(Collection<String> paths) throws Exception {
+    ZooKeeper zk = this.getZooKeeper();
+    List<String> missPaths = new ArrayList<>();
+    for (String path : paths) {
+      if (!this.dataCache.containsKey(path)) {
+        missPaths.add(path);
+      }
+    }
+    if (missPaths.isEmpty()) {
+      return;
+    }
+    long currentEpoch = this.epoch.get();
+    Map<String, Stat> stats = new HashMap<>();
+    Map<String, byte[]> values = ZKTools.getDataAll(zk, missPaths, this, stats);
+    if (this.epoch.get() != currentEpoch) {
+      return;
+    }
+    Map<String, NodeData> prefetched = new HashMap<>();
+    for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+      NodeData nodeData = new NodeData(entry.getValue(), stats.get(entry.getKey()));
+      if (this.dataCache.putIfAbsent(entry.getKey(), nodeData) == null) {
+        prefetched.put(entry.getKey(), nodeData);
+      }
+    }
+    if (this.epoch.get() != currentEpoch) {
+      for (Map.Entry<String, NodeData> entry : prefetched.entrySet()) {
+        this.dataCache.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * 作废节点本身的缓存和父节点的子节点列表
+   */
+  void invalidate(String path) {
+    this.epoch.incrementAndGet();
+    this.dataCache.remove(path);
+    this.childrenCache.remove(path);
+    int index = path.lastIndexOf('/');
+    if (index > 0) {
+      this.childrenCache.remove(path.substring(0, index));
+    }
+  }
+
+  void clear() {
+    this.epoch.incrementAndGet();
+    this.dataCache.clear();
+    this.childrenCache.clear();
+  }
+
+  public void process(WatchedEvent event) {
+    if (event.getType() == Event.EventType.None) {
+      if (event.getState() != Event.KeeperState.SyncConnected) {
+        log.info("Zookeeper连接状态变化：" + event.getState() + "，清空本地缓存");
+        this.clear();
+      }
+      return;
+    }
+    String path = event.getPath();
+    if (path == null) {
+      return;
+    }
+    this.epoch.incrementAndGet();
+    switch (event.getType()) {
+      case NodeChildrenChanged:
+        this.childrenCache.remove(path);
+        break;
+      case NodeDeleted:
+        this.childrenCache.remove(path);
+        this.dataCache.remove(path);
+        break;
+      default:
+        this.dataCache.remove(path);
+    }
+  }
+
+  private NodeData getNodeData(String path) throws Exception {
+    ZooKeeper zk = this.getZooKeeper();
+    NodeData nodeData = this.dataCache.get(path);
+    if (nodeData != null) {
+      return nodeData;
+    }
+    long currentEpoch = this.epoch.get();
+    while (true) {
+      try {
+        Stat stat = new Stat();
+        byte[] data = zk.getData(path, this, stat);
+        nodeData = new NodeData(data, stat);
+        break;
+      } catch (KeeperException.NoNodeException e) {
+        // exists 在节点不存在时也会注册watch，节点创建后作废缓存
+        if (zk.exists(path, this) == null) {
+          nodeData = new NodeData(null, null);
+          break;
+        }
+      }
+    }
+    if (this.epoch.get() == currentEpoch) {
+      this.dataCache.put(path, nodeData);
+      if (this.epoch.get() != currentEpoch) {
+        this.dataCache.remove(path, nodeData);
+      }
+    }
+    return nodeData;
+  }
+
+  private ZooKeeper getZooKeeper() throws Exception {
+    ZooKeeper zk = this.zkManager.getZooKeeper();
+    if (zk != this.zooKeeper) {
+      synchronized (this) {
+        if (zk != this.zooKeeper) {
+          this.clear();
+          this.zooKeeper = zk;
+        }
+      }
+    }
+    return zk;
+  }
+
+  /**
+   * 节点数据和Stat，stat为null表示节点不存在
+   */
+  private static final class NodeData {
+    final byte[] data;
+    final Stat stat;
+
+    NodeData(byte[] data, Stat stat) {
+      this.data = data;
+      this.stat = stat;
+    }
+  }
+}
@@ -112,6 +112,9 @@ public class ZKManager {
           throw new Exception("AnySchedule程序版本 " + Version.getVersion() + " 不兼容Zookeeper中的数据版本 " + dataVersion);
         }
         log.info("当前的程序版本:" + Version.getVersion() + " 数据版本: " + dataVersion);
+        if (!Version.isCompactTaskItem(dataVersion)) {
+          log.warn("任务项仍然使用旧的存储格式，所有服务器升级后可以调用 /zookeeper/migrate 迁移为单节点紧凑格式");
+        }
       }
     }
   }
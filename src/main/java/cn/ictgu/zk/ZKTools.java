@@ -2,12 +2,20 @@ package cn.ictgu.zk;
 
 import lombok.extern.log4j.Log4j;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Zookeeper Tools
@@ -29,6 +37,81 @@ public class ZKTools {
     }
   }
 
+  /**
+   * 用异步接口读取多个节点的数据，请求在会话上连续发送后一起等待结果
+   * 节点不存在时结果中没有该路径，节点数据为null时结果中的值为null，其它错误抛出对应的KeeperException
+   */
+  static Map<String, byte[]> getDataAll(ZooKeeper zk, Collection<String> paths) throws Exception {
+    return getDataAll(zk, paths, null, null);
+  }
+
+  /**
+   * 用异步接口读取多个节点的数据，watcher不为null时同时注册watch，stats不为null时放入节点的Stat
+   */
+  static Map<String, byte[]> getDataAll(ZooKeeper zk, Collection<String> paths, Watcher watcher, Map<String, Stat> stats) throws Exception {
+    Map<String, byte[]> result = new HashMap<>();
+    if (paths.isEmpty()) {
+      return result;
+    }
+    CountDownLatch latch = new CountDownLatch(paths.size());
+    AtomicReference<KeeperException> error = new AtomicReference<>();
+    for (String path : paths) {
+      zk.getData(path, watcher, (rc, callbackPath, ctx, data, stat) -> {
+        KeeperException.Code code = KeeperException.Code.get(rc);
+        synchronized (result) {
+          if (code == KeeperException.Code.OK) {
+            result.put(callbackPath, data);
+            if (stats != null) {
+              stats.put(callbackPath, stat);
+            }
+          } else if (code != KeeperException.Code.NONODE) {
+            error.compareAndSet(null, KeeperException.create(code, callbackPath));
+          }
+        }
+        latch.countDown();
+      }, null);
+    }
+    latch.await();
+    if (error.get() != null) {
+      throw error.get();
+    }
+    synchronized (result) {
+      return result;
+    }
+  }
+
+  /**
+   * 用异步接口读取多个节点的子节点，节点不存在时结果中没有该路径，其它错误抛出对应的KeeperException
+   */
+  static Map<String, List<String>> getChildrenAll(ZooKeeper zk, Collection<String> paths) throws Exception {
+    Map<String, List<String>> result = new HashMap<>();
+    if (paths.isEmpty()) {
+      return result;
+    }
+    CountDownLatch latch = new CountDownLatch(paths.size());
+    AtomicReference<KeeperException> error = new AtomicReference<>();
+    for (String path : paths) {
+      zk.getChildren(path, false, (rc, callbackPath, ctx, children) -> {
+        KeeperException.Code code = KeeperException.Code.get(rc);
+        synchronized (result) {
+          if (code == KeeperException.Code.OK) {
+            result.put(callbackPath, children);
+          } else if (code != KeeperException.Code.NONODE) {
+            error.compareAndSet(null, KeeperException.create(code, callbackPath));
+          }
+        }
+        latch.countDown();
+      }, null);
+    }
+    latch.await();
+    if (error.get() != null) {
+      throw error.get();
+    }
+    synchronized (result) {
+      return result;
+    }
+  }
+
   public static void deleteTree(ZooKeeper zk, String path) throws Exception {
     String[] list = getTree(zk, path);
     for (int i = list.length - 1; i >= 0; i--) {
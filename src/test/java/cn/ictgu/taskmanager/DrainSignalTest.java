@@ -0,0 +1,96 @@
+package cn.ictgu.taskmanager;
+
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 按处理器中的用法驱动DrainSignal，验证数据处理完毕的通知不会丢失并且及时
+ */
+public class DrainSignalTest {
+
+  // 最后一个任务处理完到future完成的最大允许延迟
+  private static final long MAX_LATENCY_MILLIS = 500;
+
+  @Test
+  public void completeImmediatelyWhenAlreadyDrained() {
+    DrainSignal drainSignal = new DrainSignal(() -> true);
+    assertTrue(drainSignal.whenDrained().isDone());
+  }
+
+  @Test
+  public void completeOnlyAfterDrained() {
+    AtomicInteger taskCount = new AtomicInteger(1);
+    DrainSignal drainSignal = new DrainSignal(() -> taskCount.get() == 0);
+    CompletableFuture<Void> future = drainSignal.whenDrained();
+    drainSignal.signal();
+    assertFalse(future.isDone());
+    taskCount.set(0);
+    drainSignal.signal();
+    assertTrue(future.isDone());
+  }
+
+  @Test
+  public void noLostSignalAndBoundedLatency() throws Exception {
+    Queue<Integer> taskList = new ConcurrentLinkedQueue<>();
+    AtomicInteger runningCount = new AtomicInteger();
+    DrainSignal drainSignal = new DrainSignal(() -> taskList.isEmpty() && runningCount.get() == 0);
+    AtomicLong lastFinishTime = new AtomicLong();
+    Thread[] threads = new Thread[4];
+    AtomicBoolean isStop = new AtomicBoolean();
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        while (!isStop.get()) {
+          runningCount.incrementAndGet();
+          Integer task = taskList.poll();
+          if (task == null) {
+            runningCount.decrementAndGet();
+            drainSignal.signal();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            continue;
+          }
+          // 取出任务后通知一次，与处理器一致
+          drainSignal.signal();
+          if (task % 5 == 0) {
+            Thread.yield();
+          }
+          lastFinishTime.set(System.nanoTime());
+          runningCount.decrementAndGet();
+          drainSignal.signal();
+        }
+      });
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+    long maxLatency = 0;
+    try {
+      for (int round = 0; round < 2000; round++) {
+        for (int i = 0; i < round % 50 + 1; i++) {
+          taskList.add(i);
+        }
+        try {
+          drainSignal.whenDrained().get(5, TimeUnit.SECONDS);
+        } catch (TimeoutException ex) {
+          fail("第" + round + "轮数据处理完毕的通知丢失");
+        }
+        maxLatency = Math.max(maxLatency, System.nanoTime() - lastFinishTime.get());
+      }
+    } finally {
+      isStop.set(true);
+    }
+    long maxLatencyMillis = TimeUnit.NANOSECONDS.toMillis(maxLatency);
+    assertTrue("最大延迟" + maxLatencyMillis + "毫秒", maxLatencyMillis < MAX_LATENCY_MILLIS);
+  }
+}
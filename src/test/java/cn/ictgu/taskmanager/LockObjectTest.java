@@ -0,0 +1,161 @@
+package cn.ictgu.taskmanager;
+
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按AnyScheduleProcessorSleep中的用法驱动LockObject，验证唤醒不会丢失
+ */
+public class LockObjectTest {
+
+  @Test(timeout = 5000)
+  public void wakeUpBeforeWaitIsNotLost() throws Exception {
+    LockObject lockObject = new LockObject();
+    lockObject.addThread();
+    lockObject.addThread();
+    assertTrue(lockObject.releaseThreadButNotLast());
+    assertFalse(lockObject.releaseThreadButNotLast());
+    // 空闲线程还没有开始休眠时发出的唤醒，之后休眠时直接返回
+    lockObject.notifyOtherThread(1);
+    lockObject.waitCurrentThread();
+    assertEquals(1, lockObject.count());
+  }
+
+  @Test(timeout = 10000)
+  public void notifyOnlyRequiredThreads() throws Exception {
+    LockObject lockObject = new LockObject();
+    // 当前线程作为装载数据的线程
+    lockObject.addThread();
+    int idleNumber = 3;
+    AtomicInteger wakeUpNumber = new AtomicInteger();
+    CountDownLatch idleLatch = new CountDownLatch(idleNumber);
+    Thread[] threads = new Thread[idleNumber];
+    for (int i = 0; i < idleNumber; i++) {
+      threads[i] = new Thread(() -> {
+        try {
+          lockObject.addThread();
+          assertTrue(lockObject.releaseThreadButNotLast());
+          idleLatch.countDown();
+          lockObject.waitCurrentThread();
+          wakeUpNumber.incrementAndGet();
+        } catch (Exception ex) {
+          throw new RuntimeException(ex);
+        }
+      });
+      threads[i].start();
+    }
+    idleLatch.await();
+    lockObject.notifyOtherThread(1);
+    while (wakeUpNumber.get() < 1) {
+      Thread.sleep(1);
+    }
+    Thread.sleep(200);
+    assertEquals(1, wakeUpNumber.get());
+    // 没有被唤醒的线程保持空闲，停止调度时全部唤醒
+    lockObject.notifyOtherThread();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(idleNumber, wakeUpNumber.get());
+  }
+
+  @Test
+  public void noLostWakeUpUnderRandomBatches() throws Exception {
+    LoadLoop loop = new LoadLoop(8, 20000);
+    Thread[] threads = new Thread[loop.threadNumber];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(loop);
+      threads[i].start();
+    }
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+    for (Thread thread : threads) {
+      thread.join(Math.max(deadline - System.currentTimeMillis(), 1));
+      // 唤醒丢失时所有线程都在休眠，不会再装载数据
+      assertFalse("线程没有被唤醒，已完成" + loop.rounds.get() + "轮", thread.isAlive());
+    }
+    assertEquals(loop.loaded.get(), loop.processed.get());
+    assertEquals(0, loop.lockObject.count());
+  }
+
+  /**
+   * 与AnyScheduleProcessorSleep.run相同的循环：处理完任务的最后一个线程装载数据，只唤醒批次数-1个线程
+   */
+  private static class LoadLoop implements Runnable {
+
+    final LockObject lockObject = new LockObject();
+
+    final Queue<Integer> taskList = new ConcurrentLinkedQueue<>();
+
+    final AtomicLong loaded = new AtomicLong();
+
+    final AtomicLong processed = new AtomicLong();
+
+    final AtomicInteger rounds = new AtomicInteger();
+
+    final int threadNumber;
+
+    final int maxRounds;
+
+    volatile boolean isStopSchedule = false;
+
+    LoadLoop(int threadNumber, int maxRounds) {
+      this.threadNumber = threadNumber;
+      this.maxRounds = maxRounds;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          this.lockObject.addThread();
+          while (true) {
+            if (this.isStopSchedule) {
+              this.lockObject.releaseThread();
+              this.lockObject.notifyOtherThread();
+              return;
+            }
+            Integer task = this.taskList.poll();
+            if (task == null) {
+              break;
+            }
+            if (task % 7 == 0) {
+              Thread.yield();
+            }
+            this.processed.incrementAndGet();
+          }
+          if (!this.lockObject.releaseThreadButNotLast()) {
+            if (this.rounds.incrementAndGet() >= this.maxRounds) {
+              this.isStopSchedule = true;
+              this.lockObject.notifyOtherThread();
+            } else {
+              int size = ThreadLocalRandom.current().nextInt(0, 2 * this.threadNumber);
+              for (int i = 0; i < size; i++) {
+                this.taskList.add(i);
+              }
+              this.loaded.addAndGet(size);
+              if (size > 0) {
+                this.lockObject.notifyOtherThread(size - 1);
+              }
+            }
+            this.lockObject.releaseThread();
+          } else {
+            this.lockObject.waitCurrentThread();
+          }
+        }
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+  }
+}